@@ -0,0 +1,67 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Keystrokes at the top of a file. The paired benchmarks leave the buffer as
+ * they found it, {@link #insertChar()} grows the row it types in until the
+ * file is opened again for the next iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBenchmark {
+    @Param({ "1024", "1048576", "67108864", "1073741824" })
+    long size;
+
+    @Param({ "short", "long" })
+    String shape;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        file = SyntheticFiles.get(shape, size);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        NullTerminal.initEditor();
+        TextEditor.openFile(file);
+    }
+
+    @Benchmark
+    public void insertChar() {
+        TextEditor.insertChar('x');
+    }
+
+    @Benchmark
+    public void insertAndDeleteChar() {
+        TextEditor.insertChar('x');
+        TextEditor.deleteChar();
+    }
+
+    @Benchmark
+    public void insertNewLineAndDeleteChar() {
+        TextEditor.insertNewLine();
+        TextEditor.deleteChar();
+    }
+}
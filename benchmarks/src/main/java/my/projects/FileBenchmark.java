@@ -0,0 +1,69 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening a file up to its first frame, and saving it after an edit. Saving
+ * works on a copy so the generated file stays as it is.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileBenchmark {
+    @Param({ "1024", "1048576", "67108864", "1073741824" })
+    long size;
+
+    @Param({ "short", "long" })
+    String shape;
+
+    private Path file;
+    private Path copy;
+
+    @Setup
+    public void generate() throws IOException {
+        NullTerminal.initEditor();
+        file = SyntheticFiles.get(shape, size);
+        copy = Files.createTempFile("editor-bench-save", ".txt");
+        Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        Files.deleteIfExists(copy);
+    }
+
+    @Benchmark
+    public void openFile() throws IOException {
+        TextEditor.openFile(file);
+        TextEditor.refreshScreen();
+        TextEditor.flush();
+    }
+
+    @Benchmark
+    public void editorSave() throws IOException {
+        TextEditor.openFile(copy);
+        TextEditor.insertChar('x');
+        TextEditor.editorSave();
+        TextEditor.awaitSave();
+    }
+}
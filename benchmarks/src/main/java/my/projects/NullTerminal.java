@@ -0,0 +1,47 @@
+package my.projects;
+
+import java.io.EOFException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Terminal of a fixed size that never has input, for driving the editor
+ * without a console.
+ */
+final class NullTerminal implements Terminal {
+    static final int ROWS = 50;
+    static final int COLUMNS = 200;
+
+    /**
+     * Sets the editor up on a {@link NullTerminal}, discarding everything it
+     * paints.
+     */
+    static void initEditor() {
+        WritableByteChannel discard = Channels.newChannel(OutputStream.nullOutputStream());
+        TextEditor.initEditor(new NullTerminal(), discard);
+    }
+
+    @Override
+    public void enableRawMode() {
+    }
+
+    @Override
+    public void disableRawMode() {
+    }
+
+    @Override
+    public WindowSize getWindowSize() {
+        return new WindowSize(ROWS, COLUMNS);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws EOFException {
+        throw new EOFException();
+    }
+
+    @Override
+    public boolean waitForInput(long timeoutMillis) {
+        return false;
+    }
+}
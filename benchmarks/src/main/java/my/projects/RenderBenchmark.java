@@ -0,0 +1,63 @@
+package my.projects;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Composing and writing frames of a {@link NullTerminal#ROWS} by
+ * {@link NullTerminal#COLUMNS} terminal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    @Param({ "1024", "1048576", "67108864", "1073741824" })
+    long size;
+
+    @Param({ "short", "long" })
+    String shape;
+
+    @Setup
+    public void open() throws IOException {
+        NullTerminal.initEditor();
+        TextEditor.openFile(SyntheticFiles.get(shape, size));
+    }
+
+    /**
+     * Every row painted, as after opening a file.
+     */
+    @Benchmark
+    public void fullFrame() {
+        TextEditor.redraw();
+        TextEditor.refreshScreen();
+        TextEditor.flush();
+    }
+
+    /**
+     * A keystroke and the frame showing it.
+     */
+    @Benchmark
+    public void typingFrame() {
+        TextEditor.insertChar('x');
+        TextEditor.refreshScreen();
+        TextEditor.flush();
+        TextEditor.deleteChar();
+        TextEditor.refreshScreen();
+        TextEditor.flush();
+    }
+}
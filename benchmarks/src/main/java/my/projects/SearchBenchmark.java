@@ -0,0 +1,80 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The scans behind {@code editorFind} and {@code editorReplace}, from taking
+ * the snapshot to the finished match index, and stepping through the index
+ * once it is built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({ "1024", "1048576", "67108864", "1073741824" })
+    long size;
+
+    @Param({ "short", "long" })
+    String shape;
+
+    private final SearchEngine engine = new SearchEngine(ForkJoinPool.commonPool());
+    private TextBuffer content;
+    private Charset charset;
+    private SearchEngine.Search common;
+    private long match;
+
+    @Setup
+    public void open() throws IOException {
+        content = TextEditor.load(SyntheticFiles.get(shape, size));
+        charset = content.charset();
+        common = engine.find(content.snapshot(), "fox", charset);
+        common.await();
+    }
+
+    @Benchmark
+    public int findRare() {
+        return find(SyntheticFiles.NEEDLE).count();
+    }
+
+    @Benchmark
+    public int findCommon() {
+        return find("fox").count();
+    }
+
+    @Benchmark
+    public int findRegex() {
+        SearchEngine.Search search = engine.findRegex(content.snapshot(), "ne+dle$", charset);
+        search.await();
+        return search.count();
+    }
+
+    @Benchmark
+    public long nextMatch() {
+        match = common.next(match);
+        return match;
+    }
+
+    private SearchEngine.Search find(String query) {
+        SearchEngine.Search search = engine.find(content.snapshot(), query, charset);
+        search.await();
+        return search;
+    }
+}
@@ -0,0 +1,78 @@
+package my.projects;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Generated text files to benchmark against, written once into
+ * java.io.tmpdir and reused by later runs.
+ * <p>
+ * {@code short} files have 80 column lines, {@code long} ones lines of a
+ * megabyte, the pathological case for anything that works a line at a time.
+ * Every file ends with a line holding {@link #NEEDLE}, which appears nowhere
+ * else.
+ */
+final class SyntheticFiles {
+    static final String NEEDLE = "needle";
+    private static final String[] WORDS = { "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog",
+            "lorem", "ipsum", "dolor", "sit", "amet", "return", "value", "index", "buffer", "private",
+            "static", "final" };
+    private static final int TEMPLATES = 64;
+
+    private SyntheticFiles() {
+    }
+
+    static Path get(String shape, long size) throws IOException {
+        Path path = Path.of(System.getProperty("java.io.tmpdir"), "editor-bench-%s-%d.txt".formatted(shape, size));
+        if (Files.exists(path) && Files.size(path) == size) {
+            return path;
+        }
+        int lineLength = switch (shape) {
+            case "short" -> 80;
+            case "long" -> 1 << 20;
+            default -> throw new IllegalArgumentException(shape);
+        };
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 20)) {
+            write(out, size, lineLength);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return path;
+    }
+
+    private static void write(OutputStream out, long size, int lineLength) throws IOException {
+        Random random = new Random(42);
+        int templates = (int) Math.max(1, Math.min(TEMPLATES, size / lineLength));
+        byte[][] lines = new byte[templates][];
+        for (int i = 0; i < templates; i++) {
+            lines[i] = line(random, lineLength);
+        }
+
+        byte[] last = (" " + NEEDLE + "\n").getBytes(StandardCharsets.US_ASCII);
+        long remaining = size;
+        for (int i = 0; remaining >= lineLength + last.length; i++) {
+            out.write(lines[i % templates]);
+            remaining -= lineLength;
+        }
+        for (long i = remaining - last.length; i > 0; i--) {
+            out.write('x');
+        }
+        out.write(last);
+    }
+
+    private static byte[] line(Random random, int length) {
+        StringBuilder line = new StringBuilder(length);
+        while (line.length() < length - 1) {
+            line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        line.setLength(length - 1);
+        line.append('\n');
+        return line.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
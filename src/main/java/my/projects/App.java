@@ -1,12 +1,42 @@
 package my.projects;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 /**
- * Hello world!
- *
+ * {@code App file} edits a file, {@code App --server} keeps the editor
+ * running for {@code App --client file} to edit files through, and
+ * {@code App --batch script files...} edits files with a {@link Batch}
+ * script.
  */
 public class App {
-    public static void main(String[] args) {
-        TextEditor.initEditor();
-        TextEditor.openFile(args);
+    // how many saved buffers a server keeps for files opened again
+    private static final int RESIDENT_BUFFERS = Integer.getInteger("editor.server.buffers", 8);
+
+    public static void main(String[] args) throws IOException {
+        try {
+            // refused before the terminal is in raw mode, not on the first file opened
+            Encoding.configured();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        try {
+            if (args.length == 1 && args[0].equals("--server")) {
+                TextEditor.keepResident(RESIDENT_BUFFERS);
+                Server.serve(Server.socket());
+            } else if (args.length == 2 && args[0].equals("--client")) {
+                Client.attach(Server.socket(), Path.of(args[1]).toAbsolutePath().normalize());
+            } else if (args.length >= 1 && args[0].equals("--batch")) {
+                Batch.main(Arrays.copyOfRange(args, 1, args.length));
+            } else {
+                TextEditor.initEditor();
+                TextEditor.openFile(args);
+            }
+        } catch (UnsupportedOperationException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
     }
 }
@@ -0,0 +1,334 @@
+package my.projects;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Applies a script of edits to many files without a terminal, the files
+ * being edited in parallel, {@code editor.batch.threads} at a time and so
+ * with no more than that many open at once. A line is printed with the time
+ * each file took as it is done, and the throughput of the whole batch at the
+ * end.
+ * <p>
+ * Usage: {@code Batch <script> <file or glob>...}, or
+ * {@code App --batch ...}. A glob such as {@code 'conf/**.yaml'} is matched
+ * walking from the directories before its first wildcard. Each line of the
+ * script is one of the edits the keys of the editor make:
+ * <pre>
+ * goto 12         the cursor to the start of a line, ^ the first, $ the last
+ * find text       the cursor to the next match
+ * replace /re/to/ every match of a regex within lines, with any delimiter
+ * insert text     text at the cursor, with \n, \t and \\ escaped
+ * newline         a line break at the cursor
+ * delete 3        characters before the cursor, like backspace
+ * save            the file
+ * </pre>
+ * A file in which a find matches nothing is left as it is, the rest of the
+ * script skipped.
+ */
+public final class Batch {
+    private static final int THREADS = Integer.getInteger("editor.batch.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    private final List<Command> script;
+    private final SearchEngine searchEngine = new SearchEngine(ForkJoinPool.commonPool());
+    private final LongAdder saved = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    private Batch(List<Command> script) {
+        this.script = script;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the script {@code args[0]} over the files {@code args[1..]},
+     * returning the exit status: 0 if no file failed, 1 if some did and 2 if
+     * the arguments or the script are wrong.
+     */
+    static int run(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: Batch <script> <file or glob>...");
+            return 2;
+        }
+        try {
+            Encoding.configured();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+        Batch batch;
+        try {
+            batch = new Batch(parse(Files.readAllLines(Path.of(args[0]))));
+        } catch (IllegalArgumentException e) {
+            System.err.println("%s: %s".formatted(args[0], e.getMessage()));
+            return 2;
+        }
+        return batch.run(List.of(args).subList(1, args.length)) ? 0 : 1;
+    }
+
+    private record Command(int line, String name, String argument) {
+    }
+
+    /**
+     * @throws IllegalArgumentException if a line is not a command
+     */
+    private static List<Command> parse(List<String> lines) {
+        List<Command> script = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            String name = space < 0 ? line : line.substring(0, space);
+            String argument = space < 0 ? "" : line.substring(space + 1);
+            switch (name) {
+                case "goto" -> {
+                    if (!argument.matches("\\d+|\\^|\\$")) {
+                        throw new IllegalArgumentException("line %d: goto takes a line, ^ or $".formatted(i + 1));
+                    }
+                }
+                case "find", "insert" -> {
+                    if (argument.isEmpty()) {
+                        throw new IllegalArgumentException("line %d: %s needs an argument".formatted(i + 1, name));
+                    }
+                }
+                case "replace" -> {
+                    if (argument.length() < 3 || argument.split(delimiter(argument), -1).length != 4) {
+                        throw new IllegalArgumentException(
+                                "line %d: replace takes /regex/replacement/".formatted(i + 1));
+                    }
+                }
+                case "delete" -> {
+                    if (!argument.isEmpty() && !argument.matches("\\d+")) {
+                        throw new IllegalArgumentException("line %d: delete takes a count".formatted(i + 1));
+                    }
+                }
+                case "newline", "save" -> {
+                }
+                default -> throw new IllegalArgumentException("line %d: unknown command %s".formatted(i + 1, name));
+            }
+            script.add(new Command(i + 1, name, argument));
+        }
+        return script;
+    }
+
+    /**
+     * Edits every file, returning whether none failed.
+     */
+    private boolean run(List<String> files) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, THREADS), task -> {
+            Thread thread = new Thread(task, "editor-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long started = System.nanoTime();
+        try {
+            for (String file : files) {
+                for (Path path : expand(file)) {
+                    pool.execute(() -> edit(path));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // still editing
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long total = saved.sum() + unchanged.sum() + skipped.sum() + failed.sum();
+        System.out.println(String.format(Locale.ROOT,
+                "%d files in %.2f s, %.0f files/s, %.1f MB/s: %d saved, %d unchanged, %d skipped, %d failed",
+                total, seconds, total / seconds, bytes.sum() / seconds / (1024 * 1024), saved.sum(),
+                unchanged.sum(), skipped.sum(), failed.sum()));
+        return failed.sum() == 0;
+    }
+
+    private void edit(Path file) {
+        long started = System.nanoTime();
+        String outcome;
+        try {
+            outcome = apply(file);
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            outcome = "failed: %s".formatted(e);
+        }
+        System.out.println(String.format(Locale.ROOT, "%9.2f ms  %s  %s", (System.nanoTime() - started) / 1e6,
+                outcome, file));
+    }
+
+    /**
+     * Runs the script over {@code file}, returning what became of it.
+     */
+    private String apply(Path file) throws IOException {
+        boolean compressed = Gunzip.isCompressed(file);
+        TextBuffer content;
+        if (compressed) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                content = new PieceTable(in.readAllBytes());
+            }
+        } else {
+            content = TextEditor.load(file);
+        }
+        bytes.add(Files.size(file));
+
+        int row = 0;
+        int column = 0;
+        // the cursor is on the match of the last find, the next starts after it
+        boolean onMatch = false;
+        boolean written = false;
+        for (Command command : script) {
+            boolean found = false;
+            switch (command.name()) {
+                case "goto" -> {
+                    int last = Math.max(0, content.loadRows(Integer.MAX_VALUE) - 1);
+                    row = switch (command.argument()) {
+                        case "^" -> 0;
+                        case "$" -> last;
+                        default -> Math.max(0, Math.min(last, Integer.parseInt(command.argument()) - 1));
+                    };
+                    column = 0;
+                }
+                case "find" -> {
+                    TextSnapshot snapshot = content.snapshot();
+                    SearchEngine.Search search = searchEngine.find(snapshot, command.argument(), content.charset());
+                    search.await();
+                    long from = row < content.loadRows(row + 1) ? content.offsetAt(row, column) : snapshot.length();
+                    from -= onMatch ? 0 : 1;
+                    long match = search.next(from);
+                    if (match <= from) {
+                        skipped.increment();
+                        return "skipped, line %d: no match for %s".formatted(command.line(), command.argument());
+                    }
+                    row = content.rowAtOffset(match);
+                    column = content.columnAtOffset(row, match);
+                    found = true;
+                }
+                case "replace" -> {
+                    String[] parts = command.argument().split(delimiter(command.argument()), -1);
+                    SearchEngine.Replace replace = searchEngine.replaceAll(content.snapshot(), parts[1], parts[2],
+                            content.charset());
+                    replace.await();
+                    replace.apply(content);
+                    if (row < content.loadRows(row + 1)) {
+                        column = Math.min(column, content.lineLength(row));
+                    }
+                }
+                case "insert" -> {
+                    String text = unescape(command.argument());
+                    if (row == content.loadRows(row + 1)) {
+                        content.insertLine(row, "");
+                    }
+                    content.insert(row, column, text);
+                    int lastBreak = text.lastIndexOf('\n');
+                    if (lastBreak < 0) {
+                        column += text.length();
+                    } else {
+                        row += (int) text.chars().filter(c -> c == '\n').count();
+                        column = text.length() - lastBreak - 1;
+                    }
+                }
+                case "newline" -> {
+                    if (row == content.loadRows(row + 1)) {
+                        content.insertLine(row, "");
+                    }
+                    content.splitLine(row, column);
+                    row++;
+                    column = 0;
+                }
+                case "delete" -> {
+                    int count = command.argument().isEmpty() ? 1 : Integer.parseInt(command.argument());
+                    for (int i = 0; i < count && (row > 0 || column > 0); i++) {
+                        if (column > 0) {
+                            content.delete(row, column - 1, 1);
+                            column--;
+                        } else {
+                            column = content.lineLength(row - 1);
+                            content.joinLine(row - 1);
+                            row--;
+                        }
+                    }
+                }
+                case "save" -> {
+                    Save.write(content.snapshot(), file, compressed, content.isMapped());
+                    written = true;
+                }
+                default -> throw new IllegalStateException(command.name());
+            }
+            onMatch = found;
+        }
+        (written ? saved : unchanged).increment();
+        return written ? "saved" : "unchanged";
+    }
+
+    /**
+     * Returns a regex matching the delimiter {@code argument} starts with.
+     */
+    private static String delimiter(String argument) {
+        return Pattern.quote(argument.substring(0, 1));
+    }
+
+    private static String unescape(String text) {
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                unescaped.append(next == 'n' ? '\n' : next == 't' ? '\t' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * Returns {@code file} if it is a path, or the files its glob matches.
+     */
+    private static List<Path> expand(String file) throws IOException {
+        int wildcard = indexOfAny(file, "*?[{");
+        if (wildcard < 0) {
+            return List.of(Path.of(file));
+        }
+        int separator = file.lastIndexOf('/', wildcard);
+        Path base = separator < 0 ? Path.of("") : Path.of(separator == 0 ? "/" : file.substring(0, separator));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + file);
+        try (Stream<Path> walk = Files.walk(base)) {
+            return walk.filter(path -> matcher.matches(path) && Files.isRegularFile(path)).sorted().toList();
+        }
+    }
+
+    private static int indexOfAny(String text, String chars) {
+        for (int i = 0; i < text.length(); i++) {
+            if (chars.indexOf(text.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,89 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Growable heap byte storage, used for files read into memory and for the
+ * append-only buffer holding every inserted byte.
+ * <p>
+ * Bytes once appended never change, and {@code data} is volatile so a
+ * {@link TextSnapshot} read on another thread never sees a grown array
+ * without its contents.
+ */
+class ByteArraySource implements ByteSource {
+    private volatile byte[] data;
+    private int length;
+
+    ByteArraySource(int capacity) {
+        this.data = new byte[Math.max(16, capacity)];
+    }
+
+    ByteArraySource(byte[] data) {
+        this.data = data;
+        this.length = data.length;
+    }
+
+    void append(byte[] bytes, int offset, int count) {
+        byte[] data = this.data;
+        if (length + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + count, data.length * 2));
+        }
+        System.arraycopy(bytes, offset, data, length, count);
+        this.data = data;
+        length += count;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(long position) {
+        return data[(int) position];
+    }
+
+    @Override
+    public void copy(long position, byte[] destination, int offset, int count) {
+        System.arraycopy(data, (int) position, destination, offset, count);
+    }
+
+    @Override
+    public void copy(long position, ByteBuffer destination, int count) {
+        destination.put(data, (int) position, count);
+    }
+
+    @Override
+    public void writeTo(long position, long count, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, (int) position, (int) count);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public long indexOf(byte value, long from, long to) {
+        byte[] data = this.data;
+        for (int i = (int) from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long count(byte value, long from, long to) {
+        byte[] data = this.data;
+        long count = 0;
+        for (int i = (int) from; i < to; i++) {
+            if (data[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
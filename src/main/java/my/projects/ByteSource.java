@@ -0,0 +1,43 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Random access view over the bytes a {@link PieceTable} piece points into.
+ */
+interface ByteSource {
+    long length();
+
+    byte byteAt(long position);
+
+    void copy(long position, byte[] destination, int offset, int length);
+
+    /**
+     * Puts {@code length} bytes starting at {@code position} into
+     * {@code destination}, which must have room for them.
+     */
+    void copy(long position, ByteBuffer destination, int length);
+
+    void writeTo(long position, long length, WritableByteChannel channel) throws IOException;
+
+    default long indexOf(byte value, long from, long to) {
+        for (long i = from; i < to; i++) {
+            if (byteAt(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    default long count(byte value, long from, long to) {
+        long count = 0;
+        for (long i = from; i < to; i++) {
+            if (byteAt(i) == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
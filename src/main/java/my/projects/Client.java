@@ -0,0 +1,89 @@
+package my.projects;
+
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Edits a file through a running {@link Server}, {@code App --client file}:
+ * puts the terminal into raw mode and passes input and size changes to the
+ * server and what it paints to the terminal, until the server hangs up.
+ */
+final class Client {
+    // how often the size of the terminal is checked while there is no input
+    private static final long RESIZE_POLL_MILLIS = 250;
+
+    private Client() {
+    }
+
+    /**
+     * Edits {@code file} through the server on {@code socket}, returning
+     * once the session has ended.
+     */
+    static void attach(Path socket, Path file) throws IOException {
+        attach(Terminal.system(), socket, file, new FileOutputStream(FileDescriptor.out));
+    }
+
+    /**
+     * Edits {@code file} through the server on {@code socket} from
+     * {@code terminal}, writing what the server paints to {@code screen}.
+     */
+    static void attach(Terminal terminal, Path socket, Path file, OutputStream screen) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            WindowSize size = terminal.getWindowSize();
+            out.writeUTF(file.toAbsolutePath().toString());
+            out.writeInt(size.rows());
+            out.writeInt(size.columns());
+            out.flush();
+
+            Thread painter = new Thread(() -> paint(channel, screen), "editor-paint");
+            painter.setDaemon(true);
+            terminal.enableRawMode();
+            try {
+                painter.start();
+                byte[] buffer = new byte[64 * 1024];
+                while (painter.isAlive()) {
+                    if (terminal.waitForInput(RESIZE_POLL_MILLIS)) {
+                        int count = terminal.read(buffer, 0, buffer.length);
+                        out.writeByte(Server.INPUT);
+                        out.writeInt(count);
+                        out.write(buffer, 0, count);
+                        out.flush();
+                    }
+                    WindowSize current = terminal.getWindowSize();
+                    if (!current.equals(size)) {
+                        size = current;
+                        out.writeByte(Server.RESIZE);
+                        out.writeInt(size.rows());
+                        out.writeInt(size.columns());
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // the server hung up while input was being sent
+            } finally {
+                terminal.disableRawMode();
+            }
+        }
+    }
+
+    private static void paint(SocketChannel channel, OutputStream screen) {
+        try {
+            InputStream in = Channels.newInputStream(channel);
+            byte[] buffer = new byte[64 * 1024];
+            for (int count; (count = in.read(buffer)) >= 0;) {
+                screen.write(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            // the session ended
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package my.projects;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Works out the charset of a file from samples of its start, middle and end:
+ * UTF-8 if they are valid UTF-8, otherwise Windows-1252 if they use any of the
+ * characters it has where ISO-8859-1 has control codes, otherwise ISO-8859-1.
+ * Either single byte charset decodes every byte, so a file from a legacy
+ * system is shown as it is and its rows are saved back byte for byte.
+ */
+final class Encoding {
+    static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private static final int SAMPLE = 64 * 1024;
+
+    private Encoding() {
+    }
+
+    /**
+     * Returns the charset of {@code source}, or the one named by
+     * {@code editor.encoding} if it is set.
+     *
+     * @throws IllegalArgumentException if {@code editor.encoding} is not a
+     *                                  charset the buffer can hold
+     */
+    static Charset detect(ByteSource source) {
+        Charset configured = configured();
+        if (configured != null) {
+            return configured;
+        }
+        long length = source.length();
+        long[] starts = length <= 3 * SAMPLE ? new long[] { 0 } : new long[] { 0, length / 2, length - SAMPLE };
+        boolean utf8 = true;
+        boolean windows1252 = false;
+        boolean undefined = false;
+        for (long start : starts) {
+            int count = starts.length == 1 ? (int) length : SAMPLE;
+            byte[] sample = new byte[count];
+            source.copy(start, sample, 0, count);
+            utf8 &= isUtf8(sample, start > 0);
+            for (byte b : sample) {
+                if ((b & 0xE0) == 0x80) {
+                    windows1252 = true;
+                    // the five bytes Windows-1252 leaves undefined
+                    undefined |= b == (byte) 0x81 || b == (byte) 0x8D || b == (byte) 0x8F || b == (byte) 0x90
+                            || b == (byte) 0x9D;
+                }
+            }
+        }
+        if (utf8) {
+            return StandardCharsets.UTF_8;
+        }
+        return windows1252 && !undefined ? WINDOWS_1252 : StandardCharsets.ISO_8859_1;
+    }
+
+    /**
+     * Returns the charset named by {@code editor.encoding}, or null if it is
+     * not set.
+     *
+     * @throws IllegalArgumentException if it names no charset, or one the
+     *                                  buffer cannot hold. Rows and columns
+     *                                  are found in the bytes, which works
+     *                                  for UTF-8 and for single byte charsets
+     *                                  that encode line breaks as ASCII does,
+     *                                  but not for UTF-16 or Shift_JIS.
+     */
+    static Charset configured() {
+        String name = System.getProperty("editor.encoding");
+        if (name == null) {
+            return null;
+        }
+        Charset charset;
+        try {
+            charset = Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("editor.encoding: unknown charset %s".formatted(name));
+        }
+        if (!charset.equals(StandardCharsets.UTF_8) && !(charset.canEncode()
+                && charset.newEncoder().maxBytesPerChar() == 1
+                && Arrays.equals("\r\n".getBytes(charset), new byte[] { '\r', '\n' }))) {
+            throw new IllegalArgumentException(
+                    "editor.encoding: %s is not supported, only UTF-8 and single byte charsets such as ISO-8859-1"
+                            .formatted(charset.name()));
+        }
+        return charset;
+    }
+
+    /**
+     * Returns whether {@code sample} is valid UTF-8, but for a sequence cut
+     * at its end or, {@code fromMiddle}, at its start.
+     */
+    private static boolean isUtf8(byte[] sample, boolean fromMiddle) {
+        int skip = 0;
+        while (fromMiddle && skip < Math.min(3, sample.length) && (sample[skip] & 0xC0) == 0x80) {
+            skip++;
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer chars = CharBuffer.allocate(sample.length);
+        return !decoder.decode(ByteBuffer.wrap(sample, skip, sample.length - skip), chars, false).isError();
+    }
+}
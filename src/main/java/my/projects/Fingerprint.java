@@ -0,0 +1,177 @@
+package my.projects;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+
+/**
+ * What a file held when the buffer last matched it: its size, modification
+ * time and a CRC32C of every megabyte. Whether another program has changed
+ * the file since takes a stat, and bringing the buffer up to date reads the
+ * file once, merging in only the bytes that differ.
+ * <p>
+ * The checksums are worked out in the background from a snapshot of the
+ * buffer, which holds the file's bytes but for the line feed the buffer adds
+ * after a last line without one. The file is read with that line feed added
+ * too, so the two compare byte for byte.
+ */
+final class Fingerprint {
+    static final int CHUNK = 1024 * 1024;
+
+    private final long size;
+    private final FileTime modified;
+    // of the snapshot a chunk at a time, null for a buffer that is not the file's bytes
+    private final CompletableFuture<long[]> checksums;
+
+    private Fingerprint(long size, FileTime modified, CompletableFuture<long[]> checksums) {
+        this.size = size;
+        this.modified = modified;
+        this.checksums = checksums;
+    }
+
+    /**
+     * Takes the fingerprint of {@code file}, whose bytes {@code snapshot}
+     * holds, or which is only compared by size and time if it is null.
+     */
+    static Fingerprint of(Path file, TextSnapshot snapshot) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        CompletableFuture<long[]> checksums = snapshot == null ? null
+                : CompletableFuture.supplyAsync(() -> checksums(snapshot), ForkJoinPool.commonPool());
+        return new Fingerprint(attributes.size(), attributes.lastModifiedTime(), checksums);
+    }
+
+    /**
+     * Returns whether {@code file} still has the size and modification time
+     * it had, which a file that cannot be read no longer does.
+     */
+    boolean matches(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().equals(modified);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the replacements that turn {@code buffer} into what
+     * {@code file} holds now. Chunks at the same offset in both are compared
+     * by checksum while the buffer is {@code unchanged} since the fingerprint
+     * was taken, and byte for byte otherwise; if the file is another length
+     * the bytes after the first chunk that differs have moved, and what the
+     * two end with is compared from the end.
+     *
+     * @throws IOException if the file cannot be read, or the bytes that
+     *                     differ do not fit in an array
+     */
+    List<TextBuffer.Replacement> changes(Path file, TextSnapshot buffer, boolean unchanged) throws IOException {
+        long[] recorded = unchanged && checksums != null ? checksums.getNow(null) : null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            byte[] last = { '\n' };
+            if (fileSize > 0) {
+                readFully(channel, fileSize - 1, last, 1, fileSize);
+            }
+            long length = last[0] != '\n' ? fileSize + 1 : fileSize;
+            long old = buffer.length();
+            long common = Math.min(old, length);
+
+            List<TextBuffer.Replacement> changes = new ArrayList<>();
+            byte[] chunk = new byte[CHUNK];
+            byte[] other = new byte[CHUNK];
+            long prefix = 0;
+            for (int i = 0; prefix < common; i++) {
+                int count = (int) Math.min(CHUNK, common - prefix);
+                readFully(channel, prefix, chunk, count, fileSize);
+                boolean same;
+                if (recorded != null && i < recorded.length && count == Math.min(CHUNK, old - prefix)) {
+                    same = checksum(chunk, count) == recorded[i];
+                } else {
+                    buffer.copy(prefix, other, 0, count);
+                    same = Arrays.equals(chunk, 0, count, other, 0, count);
+                }
+                if (!same) {
+                    if (old != length) {
+                        break;
+                    }
+                    changes.add(new TextBuffer.Replacement(prefix, prefix + count, Arrays.copyOf(chunk, count)));
+                }
+                prefix += count;
+            }
+            if (old == length) {
+                return changes;
+            }
+
+            long suffix = 0;
+            while (suffix < common - prefix) {
+                int count = (int) Math.min(CHUNK, common - prefix - suffix);
+                readFully(channel, length - suffix - count, chunk, count, fileSize);
+                buffer.copy(old - suffix - count, other, 0, count);
+                int same = 0;
+                while (same < count && chunk[count - 1 - same] == other[count - 1 - same]) {
+                    same++;
+                }
+                suffix += same;
+                if (same < count) {
+                    break;
+                }
+            }
+            long differing = length - suffix - prefix;
+            if (differing > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too much of the file changed to merge, %d bytes".formatted(differing));
+            }
+            byte[] bytes = new byte[(int) differing];
+            readFully(channel, prefix, bytes, bytes.length, fileSize);
+            changes.add(new TextBuffer.Replacement(prefix, old - suffix, bytes));
+            return changes;
+        }
+    }
+
+    /**
+     * Reads {@code count} bytes at {@code position}, the byte just past
+     * {@code fileSize} being the line feed added to the last line.
+     */
+    private static void readFully(FileChannel channel, long position, byte[] destination, int count, long fileSize)
+            throws IOException {
+        int fromFile = (int) Math.max(0, Math.min(count, fileSize - position));
+        ByteBuffer buffer = ByteBuffer.wrap(destination, 0, fromFile);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("The file got shorter while being read");
+            }
+        }
+        if (fromFile < count) {
+            destination[fromFile] = '\n';
+        }
+    }
+
+    private static long[] checksums(TextSnapshot snapshot) {
+        long length = snapshot.length();
+        long[] checksums = new long[(int) ((length + CHUNK - 1) / CHUNK)];
+        byte[] chunk = new byte[CHUNK];
+        for (int i = 0; i < checksums.length; i++) {
+            int count = (int) Math.min(CHUNK, length - (long) i * CHUNK);
+            snapshot.copy((long) i * CHUNK, chunk, 0, count);
+            checksums[i] = checksum(chunk, count);
+        }
+        return checksums;
+    }
+
+    private static long checksum(byte[] bytes, int count) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, count);
+        return crc.getValue();
+    }
+}
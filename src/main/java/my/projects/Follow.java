@@ -0,0 +1,185 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Follows a file that is being appended to, like {@code tail -f}, on a
+ * thread of its own: only the bytes past the last ones read are read, and
+ * they are handed over a batch of complete lines at a time.
+ * <p>
+ * The directory of the file is watched for changes, the size of the file
+ * also being checked every interval in case no events come, as on some
+ * network file systems. Everything there is to read is read before waiting
+ * again, in large chunks, so a log growing fast is kept up with.
+ */
+final class Follow implements Runnable {
+    private static final int CHUNK = 4 * 1024 * 1024;
+
+    private final Path file;
+    private final long intervalMillis;
+    private final Consumer<byte[]> onLines;
+    private final Consumer<Follow> onStopped;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile WatchService watcher;
+    private volatile boolean truncated;
+    private volatile IOException failure;
+    private long position;
+
+    private Follow(Path file, long position, long intervalMillis, Consumer<byte[]> onLines,
+            Consumer<Follow> onStopped) {
+        this.file = file;
+        this.position = position;
+        this.intervalMillis = intervalMillis;
+        this.onLines = onLines;
+        this.onStopped = onStopped;
+        this.thread = new Thread(this, "editor-follow");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts following {@code file} from byte {@code position} on, passing
+     * every batch of complete lines appended to {@code onLines} and running
+     * {@code onStopped} if following stops other than by {@link #stop()}.
+     */
+    static Follow start(Path file, long position, long intervalMillis, Consumer<byte[]> onLines,
+            Consumer<Follow> onStopped) {
+        Follow follow = new Follow(file, position, intervalMillis, onLines, onStopped);
+        follow.thread.start();
+        return follow;
+    }
+
+    /**
+     * Returns whether following stopped because the file got shorter than
+     * what had been read of it, e.g. after it was rotated by truncating it.
+     */
+    boolean truncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns why following failed, or null if it has not.
+     */
+    IOException failure() {
+        return failure;
+    }
+
+    void stop() {
+        running = false;
+        WatchService watcher = this.watcher;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            watcher = watch();
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+            while (running) {
+                long size = channel.size();
+                if (size < position) {
+                    truncated = true;
+                    break;
+                }
+                while (running && position < size) {
+                    int read = channel.read(buffer, position);
+                    if (read <= 0) {
+                        break;
+                    }
+                    position += read;
+                    buffer = handOver(buffer);
+                }
+                if (!await()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            try {
+                if (watcher != null) {
+                    watcher.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (running) {
+                onStopped.accept(this);
+            }
+        }
+    }
+
+    /**
+     * Passes on the complete lines in {@code buffer} and keeps the start of
+     * a line still being written for the next read, returning the buffer to
+     * read into next.
+     */
+    private ByteBuffer handOver(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        int end = buffer.position();
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end > 0) {
+            onLines.accept(Arrays.copyOf(bytes, end));
+            buffer.flip().position(end);
+            buffer.compact();
+        } else if (!buffer.hasRemaining()) {
+            // a line longer than the buffer
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+        }
+        return buffer;
+    }
+
+    private WatchService watch() {
+        Path directory = file.toAbsolutePath().getParent();
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            // the size is checked every interval anyway
+            return null;
+        }
+    }
+
+    /**
+     * Waits for a change in the directory or the interval to pass, returning
+     * false once following is stopped.
+     */
+    private boolean await() {
+        try {
+            if (watcher == null) {
+                Thread.sleep(intervalMillis);
+                return running;
+            }
+            WatchKey key = watcher.poll(intervalMillis, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                key.pollEvents();
+                key.reset();
+            }
+            return running;
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package my.projects;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a gzip file into the buffer on a thread of its own, handing
+ * the lines over a batch at a time as they come out, so the start of a big
+ * compressed log is shown and can be scrolled while the rest is still being
+ * decompressed. Files of several gzip members, as {@link Save} writes them,
+ * are read as one.
+ */
+final class Gunzip implements Runnable {
+    private static final int CHUNK = 4 * 1024 * 1024;
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Consumer<byte[]> onLines;
+    private final Consumer<Gunzip> onDone;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    private volatile int percentDone;
+
+    private Gunzip(Path file, Consumer<byte[]> onLines, Consumer<Gunzip> onDone) {
+        this.file = file;
+        this.onLines = onLines;
+        this.onDone = onDone;
+        this.thread = new Thread(this, "editor-gunzip");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Returns whether {@code file} starts with the gzip magic number.
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Returns up to the first {@code count} bytes of {@code file}
+     * decompressed, for working out how its text is encoded before the rest
+     * comes.
+     */
+    static byte[] sample(Path file, int count) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file), INPUT_BUFFER_SIZE)) {
+            return in.readNBytes(count);
+        }
+    }
+
+    /**
+     * Starts decompressing {@code file}, passing every batch of complete lines
+     * to {@code onLines}, the last line with a line feed added if it had none,
+     * and running {@code onDone} once the file is read or reading failed.
+     */
+    static Gunzip start(Path file, Consumer<byte[]> onLines, Consumer<Gunzip> onDone) {
+        Gunzip gunzip = new Gunzip(file, onLines, onDone);
+        gunzip.thread.start();
+        return gunzip;
+    }
+
+    /**
+     * Returns how much of the compressed file has been read, in percent.
+     */
+    int percentDone() {
+        return percentDone;
+    }
+
+    /**
+     * Returns why decompressing failed, or null if it has not.
+     */
+    IOException failure() {
+        return failure;
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                InputStream in = new GZIPInputStream(Channels.newInputStream(channel), INPUT_BUFFER_SIZE)) {
+            long size = Math.max(1, channel.size());
+            byte[] buffer = new byte[CHUNK];
+            int filled = 0;
+            while (running) {
+                // only short of filling the buffer at the end of the file
+                int read = in.readNBytes(buffer, filled, buffer.length - filled);
+                filled += read;
+                percentDone = (int) (channel.position() * 100 / size);
+                if (filled < buffer.length) {
+                    if (filled > 0) {
+                        byte[] lines = Arrays.copyOf(buffer, buffer[filled - 1] == '\n' ? filled : filled + 1);
+                        lines[lines.length - 1] = '\n';
+                        onLines.accept(lines);
+                    }
+                    break;
+                }
+                int end = filled;
+                while (end > 0 && buffer[end - 1] != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    // a line longer than the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                onLines.accept(Arrays.copyOf(buffer, end));
+                System.arraycopy(buffer, end, buffer, 0, filled - end);
+                filled -= end;
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            if (running) {
+                onDone.accept(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package my.projects;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Colors rows with a {@link Syntax}. The lexer state at the end of every row
+ * is kept, so painting a row only lexes that row, and after an edit rows are
+ * lexed again from the edited one only until one ends in the same state as
+ * before. States are only worked out as far down as rows get painted.
+ * <p>
+ * The states cover a window of consecutive rows. Jumping far past its end
+ * starts a new window a little above the target, taking that row to start
+ * in the default state, instead of lexing everything in between.
+ */
+final class Highlighter {
+    static final byte NORMAL = 0;
+    static final byte KEYWORD = 1;
+    static final byte TYPE = 2;
+    static final byte STRING = 3;
+    static final byte NUMBER = 4;
+    static final byte COMMENT = 5;
+    static final byte KEY = 6;
+    static final byte ERROR = 7;
+    static final byte WARNING = 8;
+    static final byte INFO = 9;
+    static final byte DEBUG = 10;
+    static final byte TIME = 11;
+
+    // SGR foreground color per style
+    private static final String[] COLORS = { "\033[39m", "\033[33m", "\033[36m", "\033[32m", "\033[35m",
+            "\033[90m", "\033[34m", "\033[31m", "\033[33m", "\033[32m", "\033[90m", "\033[36m" };
+
+    private static final int SYNC_DISTANCE = 100_000;
+    private static final int SYNC_LINES = 1_000;
+    // longer rows are not lexed, they keep the state they start in
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final TextBuffer content;
+    private final Layout layout;
+    private final Syntax syntax;
+    private final IntConsumer restyled;
+    private final Spans spans = new Spans();
+    // the row being lexed, kept from row to row
+    private CharBuffer chars;
+
+    // states[i] is the state row base + i ends in, for count rows
+    private int base;
+    private int[] states = new int[1024];
+    private int count;
+    // rows edited since they were last lexed
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = -1;
+
+    /**
+     * @param restyled told about rows whose colors changed without them
+     *                 being edited, e.g. by a comment opened above them
+     */
+    Highlighter(TextBuffer content, Layout layout, Syntax syntax, IntConsumer restyled) {
+        this.content = content;
+        this.layout = layout;
+        this.syntax = syntax;
+        this.restyled = restyled;
+    }
+
+    /**
+     * Rows {@code [row, row + oldRows)} have been replaced by
+     * {@code newRows} rows.
+     */
+    void edited(int row, int oldRows, int newRows) {
+        int delta = newRows - oldRows;
+        int end = row + oldRows;
+        int known = base + count;
+        if (row < base) {
+            if (end > base) {
+                count = 0;
+                return;
+            }
+            base += delta;
+            dirtyFrom = dirtyFrom == Integer.MAX_VALUE ? dirtyFrom : dirtyFrom + delta;
+            dirtyTo = dirtyTo < 0 ? dirtyTo : dirtyTo + delta;
+            return;
+        }
+        if (row >= known) {
+            return;
+        }
+        if (end < known) {
+            // the new rows are lexed again until the last of them ends in the
+            // state the last row they replaced ended in, or a row after them
+            // ends in the same state as before
+            int replacedEnd = oldRows > 0 ? states[end - 1 - base] : stateBefore(row);
+            ensureCapacity(count + delta);
+            System.arraycopy(states, end - base, states, end - base + delta, known - end);
+            count += delta;
+            if (newRows > 0) {
+                states[row + newRows - 1 - base] = replacedEnd;
+            }
+        } else {
+            count = row - base;
+        }
+        if (dirtyFrom >= end && dirtyFrom != Integer.MAX_VALUE) {
+            dirtyFrom += delta;
+        }
+        if (dirtyTo >= end) {
+            dirtyTo += delta;
+        }
+        dirtyFrom = Math.min(dirtyFrom, row);
+        dirtyTo = Math.max(dirtyTo, row + Math.max(newRows, 1) - 1);
+    }
+
+    /**
+     * Forgets the states from {@code row} on, for edits whose extent is not
+     * known.
+     */
+    void invalidateFrom(int row) {
+        count = Math.max(0, Math.min(count, row - base));
+    }
+
+    /**
+     * Works out the states rows {@code [first, end)} start in, before they
+     * are painted.
+     */
+    void prepare(int first, int end) {
+        end = Math.min(end, content.lineCount());
+        if (first < base || first > base + count + SYNC_DISTANCE) {
+            base = first <= SYNC_DISTANCE ? 0 : first - SYNC_LINES;
+            count = 0;
+        }
+
+        if (dirtyFrom < base + count) {
+            int row = Math.max(dirtyFrom, base);
+            int state = stateBefore(row);
+            boolean settled = false;
+            for (; row < base + count && row < end; row++) {
+                int old = states[row - base];
+                state = lex(row, state);
+                states[row - base] = state;
+                if (state != old) {
+                    restyled.accept(row + 1);
+                } else if (row >= dirtyTo) {
+                    settled = true;
+                    break;
+                }
+            }
+            if (settled || row >= base + count) {
+                dirtyFrom = Integer.MAX_VALUE;
+                dirtyTo = -1;
+            } else {
+                // the rows from here on still end in states lexed from before
+                // the edit, they can only be trusted again past a row that
+                // comes out the same
+                dirtyFrom = row;
+                dirtyTo = Math.max(dirtyTo, row);
+            }
+        }
+
+        while (base + count < end) {
+            int row = base + count;
+            int state = lex(row, stateBefore(row));
+            ensureCapacity(count + 1);
+            states[count++] = state;
+        }
+    }
+
+    /**
+     * Appends screen columns {@code [fromColumn, toColumn)} of {@code row} to
+     * {@code out} with SGR color runs. The row must have been
+     * {@link #prepare(int, int) prepared}.
+     */
+    void writeLine(int row, int fromColumn, int toColumn, OutputBuffer out) {
+        if (content.lineLength(row) > MAX_LINE_LENGTH) {
+            layout.writeLine(row, fromColumn, toColumn, out, null);
+            return;
+        }
+        CharBuffer line = line(row);
+        spans.clear();
+        syntax.lex(line, stateBefore(row), spans);
+        spans.finish(line.length());
+        layout.writeLine(row, fromColumn, toColumn, out, spans);
+    }
+
+    static String color(byte style) {
+        return COLORS[style];
+    }
+
+    private int stateBefore(int row) {
+        return row == base ? 0 : states[row - base - 1];
+    }
+
+    private int lex(int row, int state) {
+        if (content.lineLength(row) > MAX_LINE_LENGTH) {
+            return state;
+        }
+        spans.clear();
+        return syntax.lex(line(row), state, spans);
+    }
+
+    private CharBuffer line(int row) {
+        return chars = content.line(row, 0, Integer.MAX_VALUE, chars);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > states.length) {
+            states = Arrays.copyOf(states, Math.max(size, states.length * 2));
+        }
+    }
+
+    /**
+     * Styled runs of a line, in order. Chars not covered by a run are
+     * {@link #NORMAL}.
+     */
+    static final class Spans {
+        private int[] ends = new int[64];
+        private byte[] styles = new byte[64];
+        private int count;
+
+        void clear() {
+            count = 0;
+        }
+
+        int count() {
+            return count;
+        }
+
+        int end(int i) {
+            return ends[i];
+        }
+
+        byte style(int i) {
+            return styles[i];
+        }
+
+        void add(int from, int to, byte style) {
+            int last = count == 0 ? 0 : ends[count - 1];
+            if (from > last) {
+                append(from, NORMAL);
+            }
+            append(to, style);
+        }
+
+        private void finish(int length) {
+            add(length, length, NORMAL);
+        }
+
+        private void append(int end, byte style) {
+            if (count > 0 && styles[count - 1] == style) {
+                ends[count - 1] = end;
+                return;
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+                styles = Arrays.copyOf(styles, count * 2);
+            }
+            ends[count] = end;
+            styles[count++] = style;
+        }
+    }
+}
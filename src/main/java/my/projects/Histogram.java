@@ -0,0 +1,101 @@
+package my.projects;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative longs in the style of HdrHistogram:
+ * values below 128 are counted exactly, larger ones in log-linear buckets
+ * 64 to a power of two, so every value is reported within 1.6% and the
+ * whole range of a long fits in 30KB. Recording is a couple of shifts and
+ * an atomic increment, cheap enough for every keystroke and frame.
+ */
+class Histogram {
+    private static final int SUB_BUCKETS = 64;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR + (63 - 7) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long value) {
+        counts.incrementAndGet(index(Math.max(0, value)));
+    }
+
+    /**
+     * Returns the counts recorded so far, to be compared with a later
+     * snapshot.
+     */
+    long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the values recorded between {@code earlier} and {@code later},
+     * two snapshots of the same histogram.
+     */
+    static long[] difference(long[] later, long[] earlier) {
+        long[] difference = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            difference[i] = later[i] - earlier[i];
+        }
+        return difference;
+    }
+
+    static long count(long[] counts) {
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the value {@code percentile} percent of {@code counts} are at
+     * or below, as the highest value of its bucket, or 0 if there are none.
+     */
+    static long percentile(long[] counts, double percentile) {
+        long count = count(counts);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    static long max(long[] counts) {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestValue(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        long next = (sub + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+}
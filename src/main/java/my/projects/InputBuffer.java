@@ -0,0 +1,90 @@
+package my.projects;
+
+import java.io.IOException;
+
+/**
+ * Buffers terminal input so that everything already sent, a whole escape
+ * sequence or a burst of pasted text, is taken in with a single read and
+ * then decoded from memory.
+ */
+class InputBuffer {
+    private final Terminal terminal;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+
+    InputBuffer(Terminal terminal) {
+        this.terminal = terminal;
+    }
+
+    /**
+     * Returns the next input byte, blocking until there is one.
+     */
+    int next() throws IOException {
+        fill();
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Returns the next input byte without taking it, blocking until there is
+     * one.
+     */
+    int peek() throws IOException {
+        fill();
+        return buffer[position] & 0xFF;
+    }
+
+    /**
+     * Returns how many bytes have been read ahead.
+     */
+    int buffered() {
+        return limit - position;
+    }
+
+    /**
+     * Blocks until there is buffered input.
+     */
+    void fill() throws IOException {
+        if (position == limit) {
+            position = 0;
+            limit = terminal.read(buffer, 0, buffer.length);
+        }
+    }
+
+    /**
+     * Moves input into {@code sink} until {@code terminator} is read. The
+     * terminator itself is consumed but not copied; its first byte must not
+     * occur again within it.
+     */
+    void readUntil(byte[] terminator, OutputBuffer sink) throws IOException {
+        int matched = 0;
+        while (matched < terminator.length) {
+            fill();
+            byte b = buffer[position++];
+            if (b == terminator[matched]) {
+                matched++;
+                continue;
+            }
+            if (matched > 0) {
+                sink.append(terminator, 0, matched);
+                matched = b == terminator[0] ? 1 : 0;
+                if (matched > 0) {
+                    continue;
+                }
+            }
+            sink.append(b);
+        }
+    }
+
+    boolean hasBufferedInput() {
+        return position < limit;
+    }
+
+    /**
+     * Whether a byte can be read without blocking, waiting at most
+     * {@code timeoutMillis} for one to arrive.
+     */
+    boolean hasInput(long timeoutMillis) throws IOException {
+        return position < limit || terminal.waitForInput(timeoutMillis);
+    }
+}
@@ -0,0 +1,345 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Swap file next to the file being edited that every change made since it
+ * was last saved is appended to, so the edits survive the editor dying.
+ * <p>
+ * Changes are only copied into a buffer on the thread making them. A thread
+ * of its own writes the buffer out and forces it to disk, at most once per
+ * interval unless a lot has piled up, so the keystroke path never waits for
+ * the disk.
+ * <p>
+ * On disk that is the magic number and the size and modification time the
+ * file had when the journal was started, then a record per change: its
+ * length and CRC32 as ints followed by the offset and the number of bytes
+ * removed as longs and the bytes inserted. A record torn by a crash fails its
+ * check, and everything from there on is ignored.
+ * <p>
+ * If writing fails, say the disk is full, the journal gives up: changes are
+ * no longer buffered, so they cannot pile up in memory, and whoever started
+ * it is told once.
+ */
+final class Journal implements TextBuffer.ChangeListener, Runnable {
+    private static final int MAGIC = 0x4A524E4C; // "JRNL"
+    private static final int HEADER = 4 + 8 + 8;
+    private static final int RECORD_HEADER = 4 + 4;
+    private static final int FLUSH_THRESHOLD = 256 * 1024;
+
+    private final Path file;
+    private final Path path;
+    private final long intervalNanos;
+    private final FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    private final Thread thread;
+    private final Consumer<Journal> onFailed;
+    private volatile IOException failure;
+
+    // guarded by lock
+    private OutputBuffer pending = new OutputBuffer(64 * 1024);
+    private byte[] header;
+    private boolean running = true;
+    // changes made while a save is being written, which the saved file lacks
+    private OutputBuffer sinceSave;
+
+    // writer thread
+    private OutputBuffer writing = new OutputBuffer(64 * 1024);
+
+    private Journal(Path file, long keep, long intervalMillis, Consumer<Journal> onFailed) throws IOException {
+        this.file = file;
+        this.onFailed = onFailed;
+        this.path = pathFor(file);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis));
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (keep > 0) {
+            // drop a torn record at the end so new ones follow the last whole one
+            channel.truncate(keep);
+            channel.position(keep);
+        } else {
+            header = header(file);
+        }
+        thread = new Thread(this, "editor-journal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts journaling the changes to {@code file} into a fresh swap file.
+     * {@code onFailed} is called on the journal's thread if writing fails.
+     */
+    static Journal start(Path file, long intervalMillis, Consumer<Journal> onFailed) throws IOException {
+        return new Journal(file, 0, intervalMillis, onFailed);
+    }
+
+    /**
+     * Keeps journaling into the swap file {@code recovered} was read from,
+     * after its changes.
+     */
+    static Journal resume(Path file, Recovered recovered, long intervalMillis, Consumer<Journal> onFailed)
+            throws IOException {
+        return new Journal(file, recovered.length(), intervalMillis, onFailed);
+    }
+
+    static Path pathFor(Path file) {
+        Path name = file.getFileName();
+        return file.resolveSibling("." + name + ".swp");
+    }
+
+    /**
+     * Reads the swap file of {@code file}, returning null if there is none.
+     */
+    static Recovered read(Path file) throws IOException {
+        Path path = pathFor(file);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        List<TextBuffer.Replacement> changes = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            boolean current = channel.read(header, 0) == HEADER && header.flip().getInt() == MAGIC
+                    && header.getLong() == Files.size(file)
+                    && header.getLong() == Files.getLastModifiedTime(file).toMillis();
+            if (!current) {
+                return new Recovered(path, false, List.of(), 0);
+            }
+
+            long position = HEADER;
+            long size = channel.size();
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER);
+            CRC32 crc = new CRC32();
+            while (position + RECORD_HEADER <= size) {
+                recordHeader.clear();
+                channel.read(recordHeader, position);
+                int length = recordHeader.flip().getInt();
+                int checksum = recordHeader.getInt();
+                if (length < 16 || position + RECORD_HEADER + length > size) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.allocate(length);
+                channel.read(record, position + RECORD_HEADER);
+                crc.reset();
+                crc.update(record.array());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                record.flip();
+                long offset = record.getLong();
+                long removed = record.getLong();
+                byte[] inserted = new byte[record.remaining()];
+                record.get(inserted);
+                changes.add(new TextBuffer.Replacement(offset, offset + removed, inserted));
+                position += RECORD_HEADER + length;
+            }
+            return new Recovered(path, true, changes, position);
+        }
+    }
+
+    private static byte[] header(Path file) throws IOException {
+        return ByteBuffer.allocate(HEADER).putInt(MAGIC).putLong(Files.size(file))
+                .putLong(Files.getLastModifiedTime(file).toMillis()).array();
+    }
+
+    /**
+     * Returns why writing the swap file failed, or null while it has not.
+     */
+    IOException failure() {
+        return failure;
+    }
+
+    @Override
+    public void changed(long offset, long removed, byte[] inserted) {
+        lock.lock();
+        try {
+            if (failure != null) {
+                return;
+            }
+            int length = 16 + inserted.length;
+            byte[] record = pending.reserve(RECORD_HEADER + length);
+            int at = pending.length();
+            ByteBuffer.wrap(record, at, RECORD_HEADER + length).putInt(length).putInt(0).putLong(offset)
+                    .putLong(removed).put(inserted);
+            crc.reset();
+            crc.update(record, at + RECORD_HEADER, length);
+            ByteBuffer.wrap(record, at + 4, 4).putInt((int) crc.getValue());
+            pending.commit(RECORD_HEADER + length);
+            if (sinceSave != null) {
+                sinceSave.append(record, at, RECORD_HEADER + length);
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A snapshot of the buffer as it is now is about to be saved.
+     */
+    void saveStarted() {
+        lock.lock();
+        try {
+            sinceSave = new OutputBuffer(4096);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The snapshot has been saved, start over from the new version of the
+     * file with the changes made since it was taken.
+     */
+    void saved() {
+        lock.lock();
+        try {
+            pending.clear();
+            if (sinceSave != null) {
+                pending.append(sinceSave);
+                sinceSave = null;
+            }
+            try {
+                header = header(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The snapshot could not be saved, so the journal goes on as it was.
+     */
+    void saveFailed() {
+        lock.lock();
+        try {
+            sinceSave = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops journaling once the changes made so far are on disk.
+     */
+    void close() {
+        lock.lock();
+        try {
+            running = false;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops journaling and deletes the swap file, once the changes are either
+     * saved or knowingly thrown away.
+     */
+    void delete() {
+        lock.lock();
+        try {
+            pending.clear();
+            header = null;
+        } finally {
+            lock.unlock();
+        }
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            byte[] restart;
+            boolean last;
+            lock.lock();
+            try {
+                while (running && pending.length() == 0 && header == null) {
+                    changed.awaitUninterruptibly();
+                }
+                // give more changes a chance to come in and go to disk with these
+                long wait = intervalNanos;
+                while (running && header == null && pending.length() < FLUSH_THRESHOLD && wait > 0) {
+                    wait = changed.awaitNanos(wait);
+                }
+                last = !running;
+                OutputBuffer full = pending;
+                pending = writing;
+                writing = full;
+                restart = header;
+                header = null;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (restart != null) {
+                    channel.truncate(0);
+                    channel.position(0);
+                    channel.write(ByteBuffer.wrap(restart));
+                }
+                writing.writeTo(channel);
+                writing.clear();
+                channel.force(false);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            pending.clear();
+            sinceSave = null;
+            header = null;
+        } finally {
+            lock.unlock();
+        }
+        writing.clear();
+        onFailed.accept(this);
+    }
+
+    /**
+     * What a swap file holds: whether it was started from the version of the
+     * file on disk now, the changes it has for it and how many bytes of it
+     * those take.
+     */
+    record Recovered(Path path, boolean current, List<TextBuffer.Replacement> changes, long length) {
+    }
+}
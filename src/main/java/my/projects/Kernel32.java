@@ -51,6 +51,8 @@ interface Kernel32 extends StdCallLibrary {
     int STD_INPUT_HANDLE = -10;
     int DISABLE_NEWLINE_AUTO_RETURN = 0x0008;
 
+    int CP_UTF8 = 65001;
+
     // BOOL WINAPI GetConsoleScreenBufferInfo(
     // _In_ HANDLE hConsoleOutput,
     // _Out_ PCONSOLE_SCREEN_BUFFER_INFO lpConsoleScreenBufferInfo);
@@ -70,6 +72,13 @@ interface Kernel32 extends StdCallLibrary {
 
     Pointer GetStdHandle(int nStdHandle);
 
+    // UINT WINAPI GetConsoleOutputCP(void);
+    int GetConsoleOutputCP();
+
+    // BOOL WINAPI SetConsoleOutputCP(
+    // _In_ UINT wCodePageID);
+    boolean SetConsoleOutputCP(int wCodePageID);
+
     // typedef struct _CONSOLE_SCREEN_BUFFER_INFO {
     // COORD dwSize;
     // COORD dwCursorPosition;
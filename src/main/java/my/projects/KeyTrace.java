@@ -0,0 +1,103 @@
+package my.projects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded session: the window size followed by every chunk of input in
+ * the order the terminal delivered them. On disk that is the magic number,
+ * the rows and columns as ints, then per chunk its length as an int and its
+ * bytes.
+ */
+record KeyTrace(WindowSize size, List<byte[]> chunks) {
+    private static final int MAGIC = 0x4B545243; // "KTRC"
+
+    static KeyTrace read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("%s is not a key trace".formatted(path));
+            }
+            WindowSize size = new WindowSize(in.readInt(), in.readInt());
+            List<byte[]> chunks = new ArrayList<>();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return new KeyTrace(size, chunks);
+                }
+                chunks.add(in.readNBytes(length));
+            }
+        }
+    }
+
+    long bytes() {
+        long bytes = 0;
+        for (byte[] chunk : chunks) {
+            bytes += chunk.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * {@link Terminal} that records every chunk of input read from another
+     * one into a trace file.
+     */
+    static final class Recorder implements Terminal {
+        private final Terminal terminal;
+        private final DataOutputStream out;
+
+        Recorder(Terminal terminal, Path path) throws IOException {
+            this.terminal = terminal;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            WindowSize size = terminal.getWindowSize();
+            out.writeInt(MAGIC);
+            out.writeInt(size.rows());
+            out.writeInt(size.columns());
+        }
+
+        @Override
+        public void enableRawMode() {
+            terminal.enableRawMode();
+        }
+
+        @Override
+        public void disableRawMode() {
+            terminal.disableRawMode();
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public WindowSize getWindowSize() {
+            return terminal.getWindowSize();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = terminal.read(buffer, offset, length);
+            out.writeInt(count);
+            out.write(buffer, offset, count);
+            // a session can end in a crash, keep what was typed up to it
+            out.flush();
+            return count;
+        }
+
+        @Override
+        public boolean waitForInput(long timeoutMillis) throws IOException {
+            return terminal.waitForInput(timeoutMillis);
+        }
+    }
+}
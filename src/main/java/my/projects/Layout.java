@@ -0,0 +1,305 @@
+package my.projects;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Where the chars of a row end up on screen. Tabs run to the next tab stop,
+ * East Asian wide characters take two columns, combining marks and the low
+ * half of a surrogate pair none, so the cursor column, the char column the
+ * buffer is edited by, and the screen column differ.
+ * <p>
+ * The layout of a row is worked out once, when it is first shown after a
+ * change, as runs of chars of the same width: a row of plain ASCII is a
+ * single run however long it is. Converting between char and screen columns
+ * is then a binary search over the runs, and drawing a row only reads the
+ * chars that are visible. A row of printable chars a column each, most rows,
+ * is drawn by copying its bytes, anything else is decoded into a buffer kept
+ * from row to row.
+ */
+final class Layout {
+    static final int TAB_STOP = Integer.getInteger("editor.tabstop", 8);
+
+    // direct mapped by row, most rows looked up are the ones on screen
+    private static final int CACHE_SIZE = 256;
+    private static final int SCAN_CHUNK = 64 * 1024;
+
+    private final TextBuffer content;
+    private final Run[] cache = new Run[CACHE_SIZE];
+    private CharBuffer chars;
+
+    Layout(TextBuffer content) {
+        this.content = content;
+    }
+
+    /**
+     * Rows {@code [row, row + oldRows)} have been replaced by
+     * {@code newRows} rows.
+     */
+    void edited(int row, int oldRows, int newRows) {
+        if (oldRows == newRows) {
+            for (int i = row; i < row + oldRows && i - row < CACHE_SIZE; i++) {
+                Run cached = cache[i % CACHE_SIZE];
+                if (cached != null && cached.row == i) {
+                    cache[i % CACHE_SIZE] = null;
+                }
+            }
+        } else {
+            invalidateFrom(row);
+        }
+    }
+
+    void invalidateFrom(int row) {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (cache[i] != null && cache[i].row >= row) {
+                cache[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the screen column char {@code column} of {@code row} starts
+     * at.
+     */
+    int screenColumn(int row, int column) {
+        if (row >= content.lineCount()) {
+            return column;
+        }
+        Run run = layout(row);
+        column = Math.min(column, run.length);
+        int k = run.runAt(column);
+        return run.screenColumns[k] + (column - run.starts[k]) * run.widths[k];
+    }
+
+    /**
+     * Returns how many screen columns {@code row} takes.
+     */
+    int rowWidth(int row) {
+        return row >= content.lineCount() ? 0 : layout(row).width;
+    }
+
+    /**
+     * Returns the char column of the character covering {@code screenColumn}
+     * of {@code row}, or the length of the row if it is past its end.
+     */
+    int column(int row, int screenColumn) {
+        if (row >= content.lineCount()) {
+            return 0;
+        }
+        Run run = layout(row);
+        if (screenColumn >= run.width) {
+            return run.length;
+        }
+        // never a run of zero width chars, the run after it starts at the same
+        // screen column
+        int k = run.runAtScreenColumn(screenColumn);
+        int end = k + 1 < run.count ? run.starts[k + 1] : run.length;
+        int within = (screenColumn - run.screenColumns[k]) / Math.max(1, run.widths[k]);
+        return Math.min(end - 1, run.starts[k] + within);
+    }
+
+    /**
+     * Returns the char column the cursor moves to from {@code column} going
+     * right, past a whole surrogate pair and any combining marks after it.
+     */
+    int next(int row, int column) {
+        int length = content.lineLength(row);
+        int next = Math.min(column + 1, length);
+        while (next < length && charWidth(row, next) == 0) {
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * Returns the char column the cursor moves to from {@code column} going
+     * left.
+     */
+    int previous(int row, int column) {
+        int previous = Math.max(column - 1, 0);
+        while (previous > 0 && charWidth(row, previous) == 0) {
+            previous--;
+        }
+        return previous;
+    }
+
+    private int charWidth(int row, int column) {
+        return screenColumn(row, column + 1) - screenColumn(row, column);
+    }
+
+    /**
+     * Appends screen columns {@code [fromColumn, toColumn)} of {@code row} to
+     * {@code out}, with the colors of {@code spans} if not null. A wide
+     * character or tab cut by the edge of the screen is shown as spaces,
+     * control characters as {@code ?}.
+     */
+    void writeLine(int row, int fromColumn, int toColumn, OutputBuffer out, Highlighter.Spans spans) {
+        if (spans == null && layout(row).plain) {
+            content.writeLine(row, fromColumn, toColumn, out);
+            return;
+        }
+        int first = column(row, fromColumn);
+        int screenColumn = screenColumn(row, first);
+        // a few more chars for combining marks after the last one shown
+        int last = Math.min(content.lineLength(row), column(row, toColumn) + 4);
+        CharBuffer text = chars = content.line(row, first, last, chars);
+
+        byte style = Highlighter.NORMAL;
+        int span = 0;
+        for (int i = 0; i < text.length() && screenColumn < toColumn;) {
+            int codePoint = Character.codePointAt(text, i);
+            int chars = Character.charCount(codePoint);
+            int width = width(codePoint, screenColumn);
+            if (spans != null) {
+                while (span < spans.count() - 1 && spans.end(span) <= first + i) {
+                    span++;
+                }
+                byte next = spans.count() == 0 ? Highlighter.NORMAL : spans.style(span);
+                if (next != style) {
+                    style = next;
+                    out.append(Highlighter.color(style));
+                }
+            }
+            if (codePoint == '\t' || screenColumn < fromColumn || screenColumn + width > toColumn) {
+                for (int c = Math.max(screenColumn, fromColumn); c < Math.min(screenColumn + width, toColumn); c++) {
+                    out.append((byte) ' ');
+                }
+            } else if (Character.isISOControl(codePoint)) {
+                out.append((byte) '?');
+            } else {
+                out.append(text, i, i + chars);
+            }
+            screenColumn += width;
+            i += chars;
+        }
+        if (style != Highlighter.NORMAL) {
+            out.append(Highlighter.color(Highlighter.NORMAL));
+        }
+    }
+
+    /**
+     * Returns how many screen columns {@code codePoint} takes at
+     * {@code screenColumn}.
+     */
+    static int width(int codePoint, int screenColumn) {
+        if (codePoint == '\t') {
+            return TAB_STOP - screenColumn % TAB_STOP;
+        }
+        if (codePoint < 0x300) {
+            return 1;
+        }
+        int type = Character.getType(codePoint);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT) {
+            return 0;
+        }
+        return isWide(codePoint) ? 2 : 1;
+    }
+
+    private static boolean isWide(int c) {
+        return c >= 0x1100 && (c <= 0x115F || (c >= 0x2E80 && c <= 0x303E) || (c >= 0x3041 && c <= 0x33FF)
+                || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0xA000 && c <= 0xA4CF)
+                || (c >= 0xAC00 && c <= 0xD7A3) || (c >= 0xF900 && c <= 0xFAFF) || (c >= 0xFE30 && c <= 0xFE4F)
+                || (c >= 0xFF00 && c <= 0xFF60) || (c >= 0xFFE0 && c <= 0xFFE6) || (c >= 0x1F300 && c <= 0x1F64F)
+                || (c >= 0x1F900 && c <= 0x1F9FF) || (c >= 0x20000 && c <= 0x2FFFD)
+                || (c >= 0x30000 && c <= 0x3FFFD));
+    }
+
+    private Run layout(int row) {
+        Run cached = cache[row % CACHE_SIZE];
+        if (cached != null && cached.row == row) {
+            return cached;
+        }
+        Run run = new Run(row);
+        int length = content.lineLength(row);
+        int screenColumn = 0;
+        char previous = 0;
+        boolean plain = true;
+        for (int from = 0; from < length; from += SCAN_CHUNK) {
+            // one char more to see whether a high surrogate at the end is paired
+            CharBuffer chunk = chars = content.line(row, from, Math.min(length, from + SCAN_CHUNK + 1), chars);
+            for (int i = 0; i < Math.min(chunk.length(), SCAN_CHUNK); i++) {
+                char c = chunk.charAt(i);
+                plain &= c >= ' ' && c < 0x300 && c != 0x7F && !(c >= 0x80 && c < 0xA0);
+                int width;
+                if (Character.isHighSurrogate(c) && i + 1 < chunk.length()
+                        && Character.isLowSurrogate(chunk.charAt(i + 1))) {
+                    // the pair's width goes on its high half
+                    width = width(Character.toCodePoint(c, chunk.charAt(i + 1)), screenColumn);
+                } else if (Character.isLowSurrogate(c) && Character.isHighSurrogate(previous)) {
+                    width = 0;
+                } else {
+                    width = width(c, screenColumn);
+                }
+                run.add(from + i, screenColumn, width);
+                screenColumn += width;
+                previous = c;
+            }
+        }
+        run.length = length;
+        run.width = screenColumn;
+        run.plain = plain;
+        cache[row % CACHE_SIZE] = run;
+        return run;
+    }
+
+    /**
+     * The layout of one row: {@code count} runs, run {@code k} starting at
+     * char {@code starts[k]} and screen column {@code screenColumns[k]}, all
+     * its chars {@code widths[k]} columns wide.
+     */
+    private static final class Run {
+        final int row;
+        int[] starts = new int[4];
+        int[] screenColumns = new int[4];
+        byte[] widths = new byte[4];
+        int count;
+        int length;
+        int width;
+        // every char printable and a column wide, so char and screen columns are the same
+        boolean plain;
+
+        Run(int row) {
+            this.row = row;
+        }
+
+        void add(int start, int screenColumn, int width) {
+            if (count > 0 && widths[count - 1] == width) {
+                return;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                screenColumns = Arrays.copyOf(screenColumns, count * 2);
+                widths = Arrays.copyOf(widths, count * 2);
+            }
+            starts[count] = start;
+            screenColumns[count] = screenColumn;
+            widths[count] = (byte) width;
+            count++;
+        }
+
+        /**
+         * Returns the run holding char {@code column}.
+         */
+        int runAt(int column) {
+            int k = Arrays.binarySearch(starts, 0, count, column);
+            return k >= 0 ? k : Math.max(0, -k - 2);
+        }
+
+        /**
+         * Returns the last run starting at or before {@code screenColumn}.
+         */
+        int runAtScreenColumn(int screenColumn) {
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (screenColumns[middle] <= screenColumn) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+    }
+}
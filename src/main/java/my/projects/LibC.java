@@ -0,0 +1,137 @@
+package my.projects;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Structure;
+
+interface LibC extends Library {
+
+    LibC INSTANCE = Native.load("c", LibC.class);
+
+    int STDIN_FILENO = 0;
+    int STDOUT_FILENO = 1;
+
+    // c_iflag
+    int BRKINT = 0x0002;
+    int INPCK = 0x0010;
+    int ISTRIP = 0x0020;
+    int ICRNL = 0x0100;
+    int IXON = 0x0400;
+
+    // c_oflag
+    int OPOST = 0x0001;
+
+    // c_cflag
+    int CS8 = 0x0030;
+
+    // c_lflag
+    int ISIG = 0x0001;
+    int ICANON = 0x0002;
+    int ECHO = 0x0008;
+    int IEXTEN = 0x8000;
+
+    // c_cc indexes
+    int VTIME = 5;
+    int VMIN = 6;
+
+    int TCSAFLUSH = 2;
+    long TIOCGWINSZ = 0x5413;
+    short POLLIN = 0x0001;
+
+    // int tcgetattr(int fd, struct termios *termios_p);
+    int tcgetattr(int fd, Termios termios) throws LastErrorException;
+
+    // int tcsetattr(int fd, int optional_actions, const struct termios *termios_p);
+    int tcsetattr(int fd, int optionalActions, Termios termios) throws LastErrorException;
+
+    // int ioctl(int fd, unsigned long request, ...);
+    int ioctl(int fd, NativeLong request, Winsize winsize) throws LastErrorException;
+
+    // ssize_t read(int fd, void *buf, size_t count);
+    NativeLong read(int fd, byte[] buffer, NativeLong count) throws LastErrorException;
+
+    // int poll(struct pollfd *fds, nfds_t nfds, int timeout);
+    int poll(Pollfd fds, NativeLong nfds, int timeout) throws LastErrorException;
+
+    // struct termios {
+    // tcflag_t c_iflag;
+    // tcflag_t c_oflag;
+    // tcflag_t c_cflag;
+    // tcflag_t c_lflag;
+    // cc_t c_line;
+    // cc_t c_cc[NCCS];
+    // speed_t c_ispeed;
+    // speed_t c_ospeed;
+    // };
+    class Termios extends Structure {
+        public int c_iflag;
+        public int c_oflag;
+        public int c_cflag;
+        public int c_lflag;
+        public byte c_line;
+        public byte[] c_cc = new byte[32];
+        public int c_ispeed;
+        public int c_ospeed;
+
+        private static String[] fieldOrder = { "c_iflag", "c_oflag", "c_cflag", "c_lflag", "c_line", "c_cc",
+                "c_ispeed", "c_ospeed" };
+
+        @Override
+        protected java.util.List<String> getFieldOrder() {
+            return java.util.Arrays.asList(fieldOrder);
+        }
+
+        public Termios copy() {
+            Termios copy = new Termios();
+            copy.c_iflag = c_iflag;
+            copy.c_oflag = c_oflag;
+            copy.c_cflag = c_cflag;
+            copy.c_lflag = c_lflag;
+            copy.c_line = c_line;
+            copy.c_cc = c_cc.clone();
+            copy.c_ispeed = c_ispeed;
+            copy.c_ospeed = c_ospeed;
+            return copy;
+        }
+    }
+
+    // struct winsize {
+    // unsigned short ws_row;
+    // unsigned short ws_col;
+    // unsigned short ws_xpixel;
+    // unsigned short ws_ypixel;
+    // };
+    class Winsize extends Structure {
+        public short ws_row;
+        public short ws_col;
+        public short ws_xpixel;
+        public short ws_ypixel;
+
+        private static String[] fieldOrder = { "ws_row", "ws_col", "ws_xpixel", "ws_ypixel" };
+
+        @Override
+        protected java.util.List<String> getFieldOrder() {
+            return java.util.Arrays.asList(fieldOrder);
+        }
+    }
+
+    // struct pollfd {
+    // int fd;
+    // short events;
+    // short revents;
+    // };
+    class Pollfd extends Structure {
+        public int fd;
+        public short events;
+        public short revents;
+
+        private static String[] fieldOrder = { "fd", "events", "revents" };
+
+        @Override
+        protected java.util.List<String> getFieldOrder() {
+            return java.util.Arrays.asList(fieldOrder);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package my.projects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Sparse, lazily built index of the line feeds in a {@link ByteSource}.
+ * <p>
+ * Only a checkpoint every few lines (or every few kilobytes on long lines) is
+ * kept, so a lookup costs a binary search plus a scan bounded by the
+ * checkpoint spacing. The source is only scanned as far as queries reach and
+ * may grow, the index simply catches up on the next query.
+ * <p>
+ * A big source can also be indexed up front on a pool, cut into chunks that
+ * are each indexed as if the source started there.
+ */
+class LineIndex {
+    private static final long BUILD_CHUNK = 16 * 1024 * 1024;
+
+    private final ByteSource source;
+    private final int linesPerCheckpoint;
+    private final int bytesPerCheckpoint;
+    private long[] offsets = new long[64];
+    private long[] lineFeeds = new long[64];
+    private int checkpoints = 1;
+    private long indexedTo;
+    private long indexedLineFeeds;
+
+    LineIndex(ByteSource source) {
+        this(source, 16, 4 * 1024);
+    }
+
+    LineIndex(ByteSource source, int linesPerCheckpoint, int bytesPerCheckpoint) {
+        this.source = source;
+        this.linesPerCheckpoint = linesPerCheckpoint;
+        this.bytesPerCheckpoint = bytesPerCheckpoint;
+    }
+
+    ByteSource source() {
+        return source;
+    }
+
+    /**
+     * Number of line feeds in {@code [0, position)}.
+     */
+    long lineFeedsBefore(long position) {
+        extendTo(position);
+        int checkpoint = lastCheckpointAtOrBefore(position);
+        return lineFeeds[checkpoint] + source.count((byte) '\n', offsets[checkpoint], position);
+    }
+
+    /**
+     * Offset just after the {@code n}-th line feed of the source, or the
+     * source length if it has fewer.
+     */
+    long positionAfter(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        while (indexedLineFeeds < n && indexedTo < source.length()) {
+            step(source.length());
+        }
+        int checkpoint = lastCheckpointBeforeLineFeed(n);
+        long position = offsets[checkpoint];
+        long seen = lineFeeds[checkpoint];
+        long length = source.length();
+        while (true) {
+            long found = source.indexOf((byte) '\n', position, length);
+            if (found < 0) {
+                return length;
+            }
+            if (++seen == n) {
+                return found + 1;
+            }
+            position = found + 1;
+        }
+    }
+
+    /**
+     * Indexes all of the source as it is now on {@code pool}, a chunk per
+     * task, the checkpoints of a chunk being shifted by the line feeds of the
+     * chunks before it once all are done. The index built is for the thread
+     * using this one to {@link #adopt(LineIndex) adopt}.
+     */
+    CompletableFuture<LineIndex> build(ForkJoinPool pool) {
+        long length = source.length();
+        return CompletableFuture.supplyAsync(() -> {
+            List<Callable<LineIndex>> chunks = new ArrayList<>();
+            for (long from = 0; from < length; from += BUILD_CHUNK) {
+                long start = from;
+                long end = Math.min(length, from + BUILD_CHUNK);
+                chunks.add(() -> {
+                    LineIndex chunk = new LineIndex(source, linesPerCheckpoint, bytesPerCheckpoint);
+                    chunk.offsets[0] = start;
+                    chunk.indexedTo = start;
+                    while (chunk.indexedTo < end) {
+                        chunk.step(end);
+                    }
+                    return chunk;
+                });
+            }
+            LineIndex built = new LineIndex(source, linesPerCheckpoint, bytesPerCheckpoint);
+            for (Future<LineIndex> chunk : pool.invokeAll(chunks)) {
+                built.append(join(chunk));
+            }
+            return built;
+        }, pool);
+    }
+
+    /**
+     * Takes over the checkpoints of {@code built} if it got further than this
+     * index.
+     */
+    void adopt(LineIndex built) {
+        if (built.source != source || built.indexedTo <= indexedTo) {
+            return;
+        }
+        offsets = built.offsets;
+        lineFeeds = built.lineFeeds;
+        checkpoints = built.checkpoints;
+        indexedTo = built.indexedTo;
+        indexedLineFeeds = built.indexedLineFeeds;
+    }
+
+    private void append(LineIndex chunk) {
+        long base = indexedLineFeeds;
+        for (int i = 0; i < chunk.checkpoints; i++) {
+            if (chunk.offsets[i] > offsets[checkpoints - 1]) {
+                indexedTo = chunk.offsets[i];
+                indexedLineFeeds = base + chunk.lineFeeds[i];
+                addCheckpoint();
+            }
+        }
+        indexedTo = chunk.indexedTo;
+        indexedLineFeeds = base + chunk.indexedLineFeeds;
+    }
+
+    private static LineIndex join(Future<LineIndex> chunk) {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void extendTo(long position) {
+        long limit = Math.min(position, source.length());
+        while (indexedTo < limit) {
+            step(source.length());
+        }
+    }
+
+    private void step(long end) {
+        long checkpointOffset = offsets[checkpoints - 1];
+        long checkpointLineFeeds = lineFeeds[checkpoints - 1];
+        long limit = Math.min(end, checkpointOffset + bytesPerCheckpoint);
+        long found = source.indexOf((byte) '\n', indexedTo, limit);
+        if (found >= 0) {
+            indexedTo = found + 1;
+            indexedLineFeeds++;
+            if (indexedLineFeeds - checkpointLineFeeds >= linesPerCheckpoint) {
+                addCheckpoint();
+            }
+        } else {
+            indexedTo = limit;
+            if (limit - checkpointOffset >= bytesPerCheckpoint) {
+                addCheckpoint();
+            }
+        }
+    }
+
+    private void addCheckpoint() {
+        if (checkpoints == offsets.length) {
+            offsets = Arrays.copyOf(offsets, checkpoints * 2);
+            lineFeeds = Arrays.copyOf(lineFeeds, checkpoints * 2);
+        }
+        offsets[checkpoints] = indexedTo;
+        lineFeeds[checkpoints] = indexedLineFeeds;
+        checkpoints++;
+    }
+
+    private int lastCheckpointAtOrBefore(long position) {
+        int low = 0;
+        int high = checkpoints - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int lastCheckpointBeforeLineFeed(long n) {
+        int low = 0;
+        int high = checkpoints - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineFeeds[mid] < n) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
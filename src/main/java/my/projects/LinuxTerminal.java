@@ -0,0 +1,99 @@
+package my.projects;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+
+public class LinuxTerminal implements Terminal {
+    private static LinuxTerminal lTerminal;
+    private LibC.Termios originalAttributes;
+    private final LibC.Pollfd pollfd = new LibC.Pollfd();
+
+    private LinuxTerminal() {
+        pollfd.fd = LibC.STDIN_FILENO;
+        pollfd.events = LibC.POLLIN;
+    }
+
+    public static LinuxTerminal getInstance() {
+        if (!Platform.isLinux()) {
+            throw new UnsupportedOperationException("LinuxTerminal needs the Linux termios layout");
+        }
+        if (lTerminal == null) {
+            lTerminal = new LinuxTerminal();
+        }
+        return lTerminal;
+    }
+
+    @Override
+    public void enableRawMode() {
+        originalAttributes = new LibC.Termios();
+        LibC.INSTANCE.tcgetattr(LibC.STDIN_FILENO, originalAttributes);
+
+        LibC.Termios raw = originalAttributes.copy();
+        raw.c_iflag &= ~(LibC.BRKINT | LibC.ICRNL | LibC.INPCK | LibC.ISTRIP | LibC.IXON);
+        raw.c_oflag &= ~LibC.OPOST;
+        raw.c_cflag |= LibC.CS8;
+        raw.c_lflag &= ~(LibC.ECHO | LibC.ICANON | LibC.IEXTEN | LibC.ISIG);
+        raw.c_cc[LibC.VMIN] = 1;
+        raw.c_cc[LibC.VTIME] = 0;
+
+        LibC.INSTANCE.tcsetattr(LibC.STDIN_FILENO, LibC.TCSAFLUSH, raw);
+    }
+
+    @Override
+    public void disableRawMode() {
+        LibC.INSTANCE.tcsetattr(LibC.STDIN_FILENO, LibC.TCSAFLUSH, originalAttributes);
+    }
+
+    @Override
+    public WindowSize getWindowSize() {
+        LibC.Winsize winsize = new LibC.Winsize();
+        try {
+            LibC.INSTANCE.ioctl(LibC.STDOUT_FILENO, new NativeLong(LibC.TIOCGWINSZ), winsize);
+        } catch (LastErrorException e) {
+            return new WindowSize(24, 80);
+        }
+        if (winsize.ws_col == 0) {
+            return new WindowSize(24, 80);
+        }
+        return new WindowSize(winsize.ws_row, winsize.ws_col);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        byte[] target = offset == 0 ? buffer : new byte[length];
+        while (true) {
+            long count;
+            try {
+                count = LibC.INSTANCE.read(LibC.STDIN_FILENO, target, new NativeLong(length)).longValue();
+            } catch (LastErrorException e) {
+                if (e.getErrorCode() == 4) { // EINTR, e.g. after a window resize
+                    continue;
+                }
+                throw new IOException(e);
+            }
+            if (count == 0) {
+                throw new EOFException();
+            }
+            if (target != buffer) {
+                System.arraycopy(target, 0, buffer, offset, (int) count);
+            }
+            return (int) count;
+        }
+    }
+
+    @Override
+    public boolean waitForInput(long timeoutMillis) throws IOException {
+        try {
+            return LibC.INSTANCE.poll(pollfd, new NativeLong(1), (int) timeoutMillis) > 0;
+        } catch (LastErrorException e) {
+            if (e.getErrorCode() == 4) { // EINTR
+                return false;
+            }
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only {@link ByteSource} over a memory mapped file. Files larger than a
+ * single {@link MappedByteBuffer} can address are mapped in 1 GB segments, so
+ * only the pages actually touched are ever brought into memory. The file is
+ * closed again once it is mapped, the mappings staying valid without it.
+ */
+class MappedFileSource implements ByteSource {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long length;
+
+    MappedFileSource(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.length = channel.size();
+            this.segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT_SIZE, length - start));
+            }
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public byte byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    @Override
+    public void copy(long position, byte[] destination, int offset, int count) {
+        while (count > 0) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int index = (int) (position & SEGMENT_MASK);
+            int chunk = Math.min(count, segment.limit() - index);
+            segment.get(index, destination, offset, chunk);
+            position += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    @Override
+    public void copy(long position, ByteBuffer destination, int count) {
+        while (count > 0) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int index = (int) (position & SEGMENT_MASK);
+            int chunk = Math.min(count, segment.limit() - index);
+            destination.put(destination.position(), segment, index, chunk);
+            destination.position(destination.position() + chunk);
+            position += chunk;
+            count -= chunk;
+        }
+    }
+
+    @Override
+    public void writeTo(long position, long count, WritableByteChannel target) throws IOException {
+        while (count > 0) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int index = (int) (position & SEGMENT_MASK);
+            int chunk = (int) Math.min(count, segment.limit() - index);
+            ByteBuffer slice = segment.slice(index, chunk);
+            while (slice.hasRemaining()) {
+                target.write(slice);
+            }
+            position += chunk;
+            count -= chunk;
+        }
+    }
+
+    @Override
+    public long indexOf(byte value, long from, long to) {
+        while (from < to) {
+            MappedByteBuffer segment = segments[(int) (from >>> SEGMENT_BITS)];
+            long base = from & ~SEGMENT_MASK;
+            int end = (int) Math.min(segment.limit(), to - base);
+            for (int i = (int) (from - base); i < end; i++) {
+                if (segment.get(i) == value) {
+                    return base + i;
+                }
+            }
+            from = base + end;
+        }
+        return -1;
+    }
+
+    @Override
+    public long count(byte value, long from, long to) {
+        long count = 0;
+        while (from < to) {
+            MappedByteBuffer segment = segments[(int) (from >>> SEGMENT_BITS)];
+            long base = from & ~SEGMENT_MASK;
+            int end = (int) Math.min(segment.limit(), to - base);
+            for (int i = (int) (from - base); i < end; i++) {
+                if (segment.get(i) == value) {
+                    count++;
+                }
+            }
+            from = base + end;
+        }
+        return count;
+    }
+}
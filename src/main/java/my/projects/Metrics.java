@@ -0,0 +1,276 @@
+package my.projects;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time between a keystroke and its paint goes. Keystroke-to-paint
+ * latency, the time spent handling keys, composing and writing frames, the
+ * bytes written per frame and the bytes allocated per key and per frame are
+ * recorded in {@link Histogram}s on the input and render threads.
+ * <p>
+ * A thread of its own turns them into a {@link Report} for every interval,
+ * shown by the status bar overlay and, if a file is given, appended to it as
+ * a line of JSON.
+ */
+class Metrics implements Runnable {
+    private final Histogram keyLatency = new Histogram();
+    private final Histogram handleKey = new Histogram();
+    private final Histogram compose = new Histogram();
+    private final Histogram flush = new Histogram();
+    private final Histogram frameBytes = new Histogram();
+    private final Histogram keyAllocation = new Histogram();
+    private final Histogram frameAllocation = new Histogram();
+    private final com.sun.management.ThreadMXBean threads;
+
+    private final Path file;
+    private final long intervalMillis;
+    private Runnable onReport;
+    private volatile Report latest;
+
+    // input thread, guarded by the editor lock like the rest of the editor state
+    private long unpaintedSince;
+    private long keyAllocatedBefore;
+
+    // render thread
+    private long paintingSince;
+    private long frameAllocatedBefore;
+
+    // reporting thread, what each live thread had allocated at the last report
+    private Map<Long, Long> threadAllocated = new HashMap<>();
+
+    /**
+     * @param file           where to append a JSON line per interval, or null
+     * @param intervalMillis how often to report
+     */
+    Metrics(Path file, long intervalMillis) {
+        this.file = file;
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.threads = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled() ? bean : null;
+    }
+
+    /**
+     * Starts reporting if it has not yet, running {@code onReport} after
+     * every report.
+     */
+    void start(Runnable onReport) {
+        boolean started = this.onReport != null;
+        this.onReport = onReport;
+        if (started) {
+            return;
+        }
+        Thread thread = new Thread(this, "editor-metrics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    Report latest() {
+        return latest;
+    }
+
+    /**
+     * Input has been read; the next frame painted will show it.
+     */
+    void inputReceived() {
+        if (unpaintedSince == 0) {
+            unpaintedSince = System.nanoTime();
+        }
+    }
+
+    long keyStarted() {
+        keyAllocatedBefore = allocatedBytes();
+        return System.nanoTime();
+    }
+
+    void keyHandled(long started) {
+        handleKey.record(System.nanoTime() - started);
+        recordAllocation(keyAllocation, keyAllocatedBefore);
+    }
+
+    long composeStarted() {
+        frameAllocatedBefore = allocatedBytes();
+        return System.nanoTime();
+    }
+
+    /**
+     * A frame has been composed; called holding the editor lock.
+     */
+    void composed(long started) {
+        compose.record(System.nanoTime() - started);
+        paintingSince = unpaintedSince;
+        unpaintedSince = 0;
+    }
+
+    /**
+     * The frame composed last has been written.
+     */
+    void flushed(long started, int bytes) {
+        long now = System.nanoTime();
+        flush.record(now - started);
+        frameBytes.record(bytes);
+        recordAllocation(frameAllocation, frameAllocatedBefore);
+        if (paintingSince != 0) {
+            keyLatency.record(now - paintingSince);
+            paintingSince = 0;
+        }
+    }
+
+    private void recordAllocation(Histogram histogram, long before) {
+        if (threads != null) {
+            histogram.record(allocatedBytes() - before);
+        }
+    }
+
+    private long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    @Override
+    public void run() {
+        Histogram[] histograms = { keyLatency, handleKey, compose, flush, frameBytes, keyAllocation,
+                frameAllocation };
+        long[][] previous = new long[histograms.length][];
+        for (int i = 0; i < histograms.length; i++) {
+            previous[i] = histograms[i].snapshot();
+        }
+        long previousTime = System.nanoTime();
+        allocatedSinceLastReport();
+
+        try (BufferedWriter out = file == null ? null
+                : Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (true) {
+                Thread.sleep(intervalMillis);
+                long[][] interval = new long[histograms.length][];
+                for (int i = 0; i < histograms.length; i++) {
+                    long[] current = histograms[i].snapshot();
+                    interval[i] = Histogram.difference(current, previous[i]);
+                    previous[i] = current;
+                }
+                long time = System.nanoTime();
+                latest = new Report(System.currentTimeMillis(), time - previousTime, interval[0], interval[1],
+                        interval[2], interval[3], interval[4], interval[5], interval[6],
+                        allocatedSinceLastReport());
+                previousTime = time;
+
+                if (out != null) {
+                    out.write(latest.toJson());
+                    out.newLine();
+                    out.flush();
+                }
+                onReport.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns what the live threads have allocated since the last call, a
+     * thread that ended in between losing what it allocated since.
+     */
+    private long allocatedSinceLastReport() {
+        if (threads == null) {
+            return 0;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> previous = threadAllocated;
+        threadAllocated = new HashMap<>();
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            // -1 for a thread that ended after the ids were taken
+            if (allocated[i] >= 0) {
+                total += allocated[i] - previous.getOrDefault(ids[i], 0L);
+                threadAllocated.put(ids[i], allocated[i]);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * What was recorded during one interval. Times are in nanoseconds.
+     */
+    record Report(long timestamp, long intervalNanos, long[] keyLatency, long[] handleKey, long[] compose,
+            long[] flush, long[] frameBytes, long[] keyAllocation, long[] frameAllocation, long allocatedBytes) {
+
+        double framesPerSecond() {
+            return Histogram.count(frameBytes) * 1e9 / intervalNanos;
+        }
+
+        double allocatedBytesPerSecond() {
+            return allocatedBytes * 1e9 / intervalNanos;
+        }
+
+        /**
+         * One line summary for the status bar.
+         */
+        String overlay() {
+            return String.format(Locale.ROOT, "key>paint p50 %.2fms p99 %.2fms | %.0f fps | %s/frame | alloc %s/s",
+                    Histogram.percentile(keyLatency, 50) / 1e6, Histogram.percentile(keyLatency, 99) / 1e6,
+                    framesPerSecond(), bytes(Histogram.percentile(frameBytes, 50)),
+                    bytes((long) allocatedBytesPerSecond()));
+        }
+
+        String toJson() {
+            StringBuilder json = new StringBuilder(1024);
+            json.append("{\"timestamp\":").append(timestamp);
+            json.append(",\"intervalMillis\":").append(TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+            json.append(",\"keys\":").append(Histogram.count(handleKey));
+            json.append(",\"frames\":").append(Histogram.count(frameBytes));
+            json.append(",\"framesPerSecond\":").append(String.format(Locale.ROOT, "%.1f", framesPerSecond()));
+            json.append(",\"allocatedBytesPerSecond\":").append((long) allocatedBytesPerSecond());
+            appendNanos(json, "keyToPaint", keyLatency);
+            appendNanos(json, "handleKey", handleKey);
+            appendNanos(json, "compose", compose);
+            appendNanos(json, "flush", flush);
+            append(json, "frameBytes", frameBytes);
+            append(json, "keyAllocatedBytes", keyAllocation);
+            append(json, "frameAllocatedBytes", frameAllocation);
+            return json.append('}').toString();
+        }
+
+        private static void appendNanos(StringBuilder json, String name, long[] counts) {
+            json.append(",\"").append(name).append("Micros\":{");
+            json.append("\"count\":").append(Histogram.count(counts));
+            for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+                json.append(",\"p").append(String.valueOf(percentile).replace(".0", "").replace('.', '_'))
+                        .append("\":").append(String.format(Locale.ROOT, "%.1f",
+                                Histogram.percentile(counts, percentile) / 1e3));
+            }
+            json.append(",\"max\":").append(String.format(Locale.ROOT, "%.1f", Histogram.max(counts) / 1e3));
+            json.append('}');
+        }
+
+        private static void append(StringBuilder json, String name, long[] counts) {
+            json.append(",\"").append(name).append("\":{");
+            json.append("\"count\":").append(Histogram.count(counts));
+            for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+                json.append(",\"p").append(String.valueOf(percentile).replace(".0", "").replace('.', '_'))
+                        .append("\":").append(Histogram.percentile(counts, percentile));
+            }
+            json.append(",\"max\":").append(Histogram.max(counts));
+            json.append('}');
+        }
+
+        private static String bytes(long bytes) {
+            if (bytes < 1024) {
+                return bytes + "B";
+            }
+            if (bytes < 1024 * 1024) {
+                return String.format(Locale.ROOT, "%.1fKB", bytes / 1024.0);
+            }
+            return String.format(Locale.ROOT, "%.1fMB", bytes / (1024.0 * 1024));
+        }
+    }
+}
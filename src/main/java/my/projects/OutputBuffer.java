@@ -0,0 +1,167 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable byte buffer a frame is composed in before it is written to the
+ * terminal in one go. Text is encoded to UTF-8 and numbers to ASCII by hand,
+ * so once the buffer has grown to the size of a frame, composing and writing
+ * frames does not allocate.
+ */
+class OutputBuffer {
+    private byte[] data;
+    private ByteBuffer view;
+    private int length;
+
+    OutputBuffer(int capacity) {
+        this.data = new byte[capacity];
+        this.view = ByteBuffer.wrap(data);
+    }
+
+    int length() {
+        return length;
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    /**
+     * Drops everything appended past {@code length} bytes.
+     */
+    void truncate(int length) {
+        this.length = Math.min(this.length, length);
+    }
+
+    OutputBuffer append(byte b) {
+        ensureCapacity(1);
+        data[length++] = b;
+        return this;
+    }
+
+    OutputBuffer append(char c) {
+        if (c < 0x80) {
+            return append((byte) c);
+        }
+        return append(String.valueOf(c));
+    }
+
+    OutputBuffer append(CharSequence text) {
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Appends chars {@code [start, end)} of {@code text}.
+     */
+    OutputBuffer append(CharSequence text, int start, int end) {
+        ensureCapacity((end - start) * 3);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                data[length++] = (byte) c;
+            } else if (c < 0x800) {
+                data[length++] = (byte) (0xC0 | (c >> 6));
+                data[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                data[length++] = (byte) (0xF0 | (codePoint >> 18));
+                data[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                data[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                data[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                data[length++] = '?';
+            } else {
+                data[length++] = (byte) (0xE0 | (c >> 12));
+                data[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                data[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    OutputBuffer append(long value) {
+        if (value < 0) {
+            append((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                return append("9223372036854775808");
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        int position = length + digits;
+        do {
+            data[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        length += digits;
+        return this;
+    }
+
+    OutputBuffer append(OutputBuffer other) {
+        return append(other.data, 0, other.length);
+    }
+
+    OutputBuffer append(byte[] bytes, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(bytes, offset, data, length, count);
+        length += count;
+        return this;
+    }
+
+    /**
+     * Returns the backing array with room for {@code count} more bytes at
+     * {@link #length()}; {@link #commit(int)} the bytes once written.
+     */
+    byte[] reserve(int count) {
+        ensureCapacity(count);
+        return data;
+    }
+
+    void commit(int count) {
+        length += count;
+    }
+
+    String decode() {
+        return new String(data, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whether the contents are the first {@code count} bytes of
+     * {@code bytes}, which may be null when {@code count} is 0.
+     */
+    boolean contentEquals(byte[] bytes, int count) {
+        return count == 0 ? length == 0 : Arrays.equals(data, 0, length, bytes, 0, count);
+    }
+
+    /**
+     * Copies the contents into {@code bytes}, or into a new array if they do
+     * not fit, and returns the array holding them.
+     */
+    byte[] copyTo(byte[] bytes) {
+        byte[] target = bytes != null && bytes.length >= length ? bytes : new byte[Math.max(length, 64)];
+        System.arraycopy(data, 0, target, 0, length);
+        return target;
+    }
+
+    void writeTo(WritableByteChannel channel) throws IOException {
+        view.clear().limit(length);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + extra, data.length * 2));
+            view = ByteBuffer.wrap(data);
+        }
+    }
+}
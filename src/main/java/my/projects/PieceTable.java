@@ -0,0 +1,940 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link TextBuffer} backed by a piece table: the original file bytes are
+ * never modified, inserted bytes go to an append-only buffer and the document
+ * is the in-order sequence of pieces pointing into either of them.
+ * <p>
+ * Pieces live in a treap keyed implicitly by byte offset, every node caching
+ * the length and line feed count of its subtree, so locating a row, inserting
+ * and deleting are all O(log n) and never copy existing text. Every row ends
+ * with a line terminator, a missing one at the end of the file is added once
+ * the whole file has been taken in.
+ * <p>
+ * The original file is taken in lazily: pieces only cover it up to a few
+ * thousand lines past the last row asked for, so opening a memory mapped file
+ * only indexes and touches the pages that are actually displayed. Meanwhile
+ * the line feeds of a mapped file are indexed in parallel, and a jump far
+ * ahead takes that index over instead of scanning up to there.
+ */
+class PieceTable implements TextBuffer {
+    private static final int SCAN_CHUNK = 4096;
+    private static final byte[] EMPTY = new byte[0];
+    private static final int LOOKAHEAD_LINES = 1024;
+    private static final int MATERIALIZE_LINES = 4096;
+    // farther ahead than this, waiting for the parallel index beats scanning
+    private static final int SCAN_LINES = 64 * 1024;
+    private static final long SCAN_BYTES = 8 * 1024 * 1024;
+    private static final int RESTORE_CHUNK = 1024 * 1024;
+    private static final long UNDO_LIMIT = Long.getLong("editor.undo.limit", 16L * 1024 * 1024);
+
+    // layout of an UndoLog entry: the edit, where it happened, the bytes it
+    // inserted into the add buffer and then a (source, start, length) triple
+    // for every piece it removed
+    private static final int OFFSET = 1;
+    private static final int INSERTED_START = 2;
+    private static final int INSERTED_LENGTH = 3;
+    private static final int TYPED = 4;
+    private static final int REMOVED = 5;
+
+    private final Charset charset;
+    private final boolean singleByte;
+    private final byte[] newline;
+    private final LineIndex originalLines;
+    private CompletableFuture<LineIndex> indexing;
+    private long materializedTo;
+    private boolean complete;
+    // whether the line feed at the end is not in the file
+    private boolean addedNewline;
+    private long fileLength;
+    private final ByteArraySource added = new ByteArraySource(1024);
+    private final LineIndex addedLines = new LineIndex(added);
+    private final Random random = new Random();
+    private Node root;
+    private final UndoLog history = new UndoLog(UNDO_LIMIT);
+    private long edits;
+    private ChangeListener listener;
+
+    private Node splitLeft;
+    private Node splitRight;
+    private int advanced;
+    private final byte[] scratch = new byte[SCAN_CHUNK];
+    private byte[] decodeBuffer = new byte[256];
+    private ByteBuffer decodeBytes = ByteBuffer.wrap(decodeBuffer);
+    // replaces malformed input as new String does
+    private final CharsetDecoder decoder;
+    // a row being painted in a charset other than UTF-8
+    private CharBuffer decodedRow;
+
+    // remembers the last resolved column so typing along a long row does not
+    // rescan it from the start on every keystroke
+    private long version;
+    private long hintVersion = -1;
+    private long hintLineStart;
+    private int hintColumn;
+    private long hintOffset;
+
+    PieceTable() {
+        this(new byte[0]);
+    }
+
+    PieceTable(byte[] original) {
+        this(new LineIndex(new ByteArraySource(original)));
+        materialize(Long.MAX_VALUE);
+    }
+
+    private PieceTable(LineIndex originalLines) {
+        this(originalLines, originalLines.source());
+    }
+
+    /**
+     * @param sample what the charset and line break are worked out from
+     */
+    private PieceTable(LineIndex originalLines, ByteSource sample) {
+        this.charset = Encoding.detect(sample);
+        this.singleByte = charset.newEncoder().maxBytesPerChar() == 1;
+        this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.originalLines = originalLines;
+        this.newline = detectNewline(sample);
+        this.fileLength = originalLines.source().length();
+        materialize(LOOKAHEAD_LINES);
+    }
+
+    /**
+     * Returns an empty buffer for a file whose lines are still to be
+     * {@link #appendLines appended}, in the charset and with the line break
+     * of {@code sample}, its first bytes.
+     */
+    static PieceTable forSample(byte[] sample) {
+        PieceTable table = new PieceTable(new LineIndex(new ByteArraySource(new byte[0])),
+                new ByteArraySource(sample));
+        table.materialize(Long.MAX_VALUE);
+        return table;
+    }
+
+    /**
+     * Opens {@code path} memory mapped instead of reading it onto the heap. The
+     * line index is kept extra sparse so its size stays negligible even for
+     * files with hundreds of millions of lines.
+     */
+    static PieceTable map(Path path) throws IOException {
+        PieceTable table = new PieceTable(new LineIndex(new MappedFileSource(path), 256, 64 * 1024));
+        table.indexing = table.originalLines.build(ForkJoinPool.commonPool());
+        return table;
+    }
+
+    @Override
+    public int lineCount() {
+        return (int) lineFeeds(root);
+    }
+
+    @Override
+    public int loadRows(int rows) {
+        if (!complete && rows > lineCount()) {
+            materialize(rows);
+        }
+        return lineCount();
+    }
+
+    @Override
+    public int lineLength(int row) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        long end = contentEnd(start, lineStart(row + 1));
+        if (hintVersion == version && hintLineStart == start) {
+            advance(hintOffset, end, Integer.MAX_VALUE);
+            return hintColumn + advanced;
+        }
+        advance(start, end, Integer.MAX_VALUE);
+        return advanced;
+    }
+
+    @Override
+    public String line(int row) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        return decode(start, contentEnd(start, lineStart(row + 1)));
+    }
+
+    @Override
+    public String line(int row, int fromColumn, int toColumn) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        long end = contentEnd(start, lineStart(row + 1));
+        long from = offsetOfColumn(start, end, fromColumn, false);
+        long to = advance(from, end, Math.max(0, toColumn - Math.max(0, fromColumn)));
+        return decode(from, to);
+    }
+
+    @Override
+    public CharBuffer line(int row, int fromColumn, int toColumn, CharBuffer chars) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        long end = contentEnd(start, lineStart(row + 1));
+        long from = offsetOfColumn(start, end, fromColumn, false);
+        long to = advance(from, end, Math.max(0, toColumn - Math.max(0, fromColumn)));
+        return decode(from, to, chars);
+    }
+
+    @Override
+    public void writeLine(int row, int fromColumn, int toColumn, OutputBuffer out) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        long end = contentEnd(start, lineStart(row + 1));
+        long from = offsetOfColumn(start, end, fromColumn, false);
+        long to = advance(from, end, Math.max(0, toColumn - Math.max(0, fromColumn)));
+        if (!charset.equals(StandardCharsets.UTF_8)) {
+            decodedRow = decode(from, to, decodedRow);
+            out.append(decodedRow);
+            return;
+        }
+        int count = (int) (to - from);
+        copy(root, from, to, out.reserve(count), out.length());
+        out.commit(count);
+    }
+
+    @Override
+    public void insert(int row, int column, CharSequence text) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        long offset = offsetOfColumn(start, contentEnd(start, lineStart(row + 1)), column, true);
+        String string = text.toString();
+        if (newline.length > 1 && string.indexOf('\n') >= 0) {
+            string = string.replace("\n", new String(newline, StandardCharsets.US_ASCII));
+        }
+        byte[] bytes = string.getBytes(charset);
+        edit(offset, 0, bytes, string.length() == 1 && string.charAt(0) != '\n');
+        if (string.indexOf('\n') < 0) {
+            hintColumn += string.length();
+            hintOffset += bytes.length;
+            hintVersion = version;
+        }
+    }
+
+    @Override
+    public void delete(int row, int column, int count) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        long end = contentEnd(start, lineStart(row + 1));
+        long from = offsetOfColumn(start, end, column, true);
+        long to = advance(from, end, count);
+        edit(from, to - from, EMPTY, false);
+        hintVersion = version;
+    }
+
+    @Override
+    public void insertLine(int row, CharSequence text) {
+        require(row);
+        Objects.checkIndex(row, lineCount() + 1);
+        byte[] bytes = text.toString().getBytes(charset);
+        byte[] line = new byte[bytes.length + newline.length];
+        System.arraycopy(bytes, 0, line, 0, bytes.length);
+        System.arraycopy(newline, 0, line, bytes.length, newline.length);
+        edit(lineStart(row), 0, line, false);
+    }
+
+    @Override
+    public void deleteLine(int row) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        edit(start, lineStart(row + 1) - start, EMPTY, false);
+    }
+
+    @Override
+    public void splitLine(int row, int column) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        edit(offsetOfColumn(start, contentEnd(start, lineStart(row + 1)), column, false), 0, newline, false);
+    }
+
+    @Override
+    public void joinLine(int row) {
+        require(row + 1);
+        Objects.checkIndex(row, lineCount() - 1);
+        long start = lineStart(row);
+        long next = lineStart(row + 1);
+        long end = contentEnd(start, next);
+        edit(end, next - end, EMPTY, false);
+    }
+
+    @Override
+    public void replace(List<Replacement> replacements) {
+        if (replacements.isEmpty()) {
+            return;
+        }
+        long end = replacements.get(replacements.size() - 1).to();
+        while (!complete && end > length(root)) {
+            materialize(lineFeeds(root) + MATERIALIZE_LINES);
+        }
+        // back to front so the offsets of the ranges still to go stay put,
+        // all of it undone as one edit
+        edits++;
+        for (int i = replacements.size() - 1; i >= 0; i--) {
+            Replacement replacement = replacements.get(i);
+            change(replacement.from(), replacement.to() - replacement.from(), replacement.bytes(), false);
+        }
+    }
+
+    @Override
+    public void appendLines(byte[] lines) {
+        materialize(Long.MAX_VALUE);
+        if (addedNewline) {
+            // the last line of the file goes on
+            deleteBytes(length(root) - newline.length, newline.length);
+            addedNewline = false;
+        }
+        insertBytes(length(root), lines);
+        fileLength += lines.length;
+    }
+
+    @Override
+    public long fileLength() {
+        return fileLength;
+    }
+
+    @Override
+    public long undo() {
+        long[][] entries = history.undo();
+        long first = -1;
+        for (long[] entry : entries) {
+            long offset = entry[OFFSET];
+            deleteBytes(offset, entry[INSERTED_LENGTH]);
+            changed(offset, entry[INSERTED_LENGTH], EMPTY);
+            split(root, offset);
+            Node right = splitRight;
+            Node removed = null;
+            long restoredTo = offset;
+            for (int i = REMOVED; i < entry.length; i += 3) {
+                LineIndex lines = entry[i] == 0 ? originalLines : addedLines;
+                removed = merge(removed, newNode(lines, entry[i + 1], entry[i + 2]));
+                restoredTo = restored(restoredTo, lines.source(), entry[i + 1], entry[i + 2]);
+            }
+            root = merge(merge(splitLeft, removed), right);
+            first = first < 0 ? offset : Math.min(first, offset);
+        }
+        version++;
+        return first;
+    }
+
+    @Override
+    public long redo() {
+        long[][] entries = history.redo();
+        long first = -1;
+        for (long[] entry : entries) {
+            long offset = entry[OFFSET];
+            long removed = 0;
+            for (int i = REMOVED; i < entry.length; i += 3) {
+                removed += entry[i + 2];
+            }
+            deleteBytes(offset, removed);
+            changed(offset, removed, EMPTY);
+            if (entry[INSERTED_LENGTH] > 0) {
+                split(root, offset);
+                Node right = splitRight;
+                root = merge(merge(splitLeft, newNode(addedLines, entry[INSERTED_START], entry[INSERTED_LENGTH])),
+                        right);
+            }
+            restored(offset, added, entry[INSERTED_START], entry[INSERTED_LENGTH]);
+            first = first < 0 ? offset : Math.min(first, offset);
+        }
+        version++;
+        return first;
+    }
+
+    /**
+     * Makes one undoable edit.
+     */
+    private void edit(long offset, long count, byte[] bytes, boolean typed) {
+        edits++;
+        change(offset, count, bytes, typed);
+    }
+
+    /**
+     * Replaces {@code count} bytes at {@code offset} with {@code bytes} and
+     * records that as part of the current edit. A typed character following
+     * the ones typed right before it is folded into their entry.
+     */
+    private void change(long offset, long count, byte[] bytes, boolean typed) {
+        if (count == 0 && bytes.length == 0) {
+            return;
+        }
+        long insertedStart = added.length();
+        long[] last = history.last();
+        if (typed && count == 0 && last != null && last[TYPED] != 0
+                && last[OFFSET] + last[INSERTED_LENGTH] == offset
+                && last[INSERTED_START] + last[INSERTED_LENGTH] == insertedStart) {
+            insertBytes(offset, bytes);
+            last[INSERTED_LENGTH] += bytes.length;
+            changed(offset, 0, bytes);
+            return;
+        }
+
+        long[] entry;
+        if (count > 0) {
+            split(root, offset);
+            Node left = splitLeft;
+            split(splitRight, count);
+            Node removed = splitLeft;
+            Node right = splitRight;
+            entry = new long[REMOVED + 3 * count(removed)];
+            encode(removed, entry, REMOVED);
+            root = merge(left, right);
+            version++;
+        } else {
+            entry = new long[REMOVED];
+        }
+        insertBytes(offset, bytes);
+        entry[UndoLog.GROUP] = edits;
+        entry[OFFSET] = offset;
+        entry[INSERTED_START] = insertedStart;
+        entry[INSERTED_LENGTH] = bytes.length;
+        entry[TYPED] = typed ? 1 : 0;
+        history.record(entry);
+        changed(offset, count, bytes);
+    }
+
+    @Override
+    public void setChangeListener(ChangeListener listener) {
+        this.listener = listener;
+    }
+
+    private void changed(long offset, long removed, byte[] inserted) {
+        if (listener != null && (removed > 0 || inserted.length > 0)) {
+            listener.changed(offset, removed, inserted);
+        }
+    }
+
+    /**
+     * Tells the listener {@code length} bytes of {@code source} have been put
+     * back at {@code offset}, a bounded chunk at a time, and returns the
+     * offset past them.
+     */
+    private long restored(long offset, ByteSource source, long start, long length) {
+        if (listener == null) {
+            return offset + length;
+        }
+        for (long done = 0; done < length;) {
+            byte[] bytes = new byte[(int) Math.min(length - done, RESTORE_CHUNK)];
+            source.copy(start + done, bytes, 0, bytes.length);
+            listener.changed(offset + done, 0, bytes);
+            done += bytes.length;
+        }
+        return offset + length;
+    }
+
+    private int encode(Node node, long[] entry, int index) {
+        if (node == null) {
+            return index;
+        }
+        index = encode(node.left, entry, index);
+        entry[index] = node.lines == originalLines ? 0 : 1;
+        entry[index + 1] = node.start;
+        entry[index + 2] = node.length;
+        return encode(node.right, entry, index + 3);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeTo(root, channel);
+        ByteSource original = originalLines.source();
+        long length = original.length();
+        if (materializedTo < length) {
+            original.writeTo(materializedTo, length - materializedTo, channel);
+            if (original.byteAt(length - 1) != '\n') {
+                ByteBuffer terminator = ByteBuffer.wrap(newline);
+                while (terminator.hasRemaining()) {
+                    channel.write(terminator);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isMapped() {
+        return originalLines.source() instanceof MappedFileSource;
+    }
+
+    @Override
+    public Charset charset() {
+        return charset;
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public TextSnapshot snapshot() {
+        int pieces = count(root) + 2;
+        ByteSource[] sources = new ByteSource[pieces];
+        long[] starts = new long[pieces];
+        long[] offsets = new long[pieces + 1];
+        int last = snapshot(root, sources, starts, offsets, 0);
+        ByteSource original = originalLines.source();
+        long length = original.length();
+        if (materializedTo < length) {
+            sources[last] = original;
+            starts[last] = materializedTo;
+            offsets[last + 1] = offsets[last] + length - materializedTo;
+            last++;
+            // the line terminator taking in the rest of the file would add
+            if (original.byteAt(length - 1) != '\n') {
+                sources[last] = new ByteArraySource(newline);
+                offsets[last + 1] = offsets[last] + newline.length;
+                last++;
+            }
+        }
+        return new TextSnapshot(Arrays.copyOf(sources, last), starts, Arrays.copyOf(offsets, last + 1));
+    }
+
+    private int snapshot(Node node, ByteSource[] sources, long[] starts, long[] offsets, int index) {
+        if (node == null) {
+            return index;
+        }
+        index = snapshot(node.left, sources, starts, offsets, index);
+        sources[index] = node.lines.source();
+        starts[index] = node.start;
+        offsets[index + 1] = offsets[index] + node.length;
+        return snapshot(node.right, sources, starts, offsets, index + 1);
+    }
+
+    @Override
+    public int rowAtOffset(long offset) {
+        if (!complete && offset >= length(root)) {
+            // past the pieces the original file follows on unchanged
+            ByteSource original = originalLines.source();
+            long position = Math.min(original.length(), materializedTo + offset - length(root));
+            adoptIndex(position - materializedTo > SCAN_BYTES);
+            long lines = originalLines.lineFeedsBefore(position) - originalLines.lineFeedsBefore(materializedTo);
+            materialize(lineFeeds(root) + lines + 1);
+        }
+        Objects.checkIndex(offset, length(root) + 1);
+        long row = 0;
+        Node node = root;
+        while (node != null) {
+            long leftLength = length(node.left);
+            if (offset < leftLength) {
+                node = node.left;
+            } else if (offset < leftLength + node.length) {
+                long position = node.start + offset - leftLength;
+                return (int) (row + lineFeeds(node.left) + node.lines.lineFeedsBefore(position)
+                        - node.lineFeedsBefore);
+            } else {
+                offset -= leftLength + node.length;
+                row += lineFeeds(node.left) + node.lineFeeds;
+                node = node.right;
+            }
+        }
+        return (int) row;
+    }
+
+    @Override
+    public int columnAtOffset(int row, long offset) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        advance(start, Math.max(start, Math.min(offset, lineStart(row + 1))), Integer.MAX_VALUE);
+        return advanced;
+    }
+
+    @Override
+    public long offsetAt(int row, int column) {
+        require(row);
+        Objects.checkIndex(row, lineCount());
+        long start = lineStart(row);
+        return offsetOfColumn(start, contentEnd(start, lineStart(row + 1)), column, false);
+    }
+
+    private void writeTo(Node node, WritableByteChannel channel) throws IOException {
+        if (node == null) {
+            return;
+        }
+        writeTo(node.left, channel);
+        node.lines.source().writeTo(node.start, node.length, channel);
+        writeTo(node.right, channel);
+    }
+
+    /**
+     * Makes sure the pieces cover the original file well past {@code row}.
+     */
+    private void require(int row) {
+        if (!complete && row + LOOKAHEAD_LINES >= lineCount()) {
+            materialize((long) row + LOOKAHEAD_LINES + MATERIALIZE_LINES);
+        }
+    }
+
+    private void materialize(long rows) {
+        ByteSource original = originalLines.source();
+        long length = original.length();
+        if (materializedTo < length) {
+            adoptIndex(rows - lineFeeds(root) > SCAN_LINES);
+        }
+        while (materializedTo < length && lineFeeds(root) < rows) {
+            // all the way in one piece, however far that is
+            long firstLineFeed = originalLines.lineFeedsBefore(materializedTo);
+            long lines = Math.max(MATERIALIZE_LINES, rows - lineFeeds(root));
+            long end = originalLines.positionAfter(firstLineFeed + lines);
+            root = append(root, originalLines, materializedTo, end - materializedTo);
+            materializedTo = end;
+        }
+        if (materializedTo == length && !complete) {
+            complete = true;
+            if (length > 0 && original.byteAt(length - 1) != '\n') {
+                insertBytes(length(root), newline);
+                addedNewline = true;
+            }
+        }
+    }
+
+    /**
+     * Takes over the line feeds indexed in parallel once they are, or waits
+     * for them if what is asked for is {@code far} ahead.
+     */
+    private void adoptIndex(boolean far) {
+        if (indexing != null && (indexing.isDone() || far)) {
+            originalLines.adopt(indexing.join());
+            indexing = null;
+        }
+    }
+
+    private long lineStart(int row) {
+        long remaining = row;
+        long base = 0;
+        Node node = root;
+        while (node != null && remaining > 0) {
+            long leftLineFeeds = lineFeeds(node.left);
+            if (remaining <= leftLineFeeds) {
+                node = node.left;
+                continue;
+            }
+            remaining -= leftLineFeeds;
+            base += length(node.left);
+            if (remaining <= node.lineFeeds) {
+                return base + node.lines.positionAfter(node.lineFeedsBefore + remaining) - node.start;
+            }
+            remaining -= node.lineFeeds;
+            base += node.length;
+            node = node.right;
+        }
+        return remaining > 0 ? length(root) : base;
+    }
+
+    private long contentEnd(long lineStart, long lineEnd) {
+        long end = lineEnd;
+        if (end > lineStart && byteAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end > lineStart && byteAt(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Resolves {@code column} of the row starting at {@code lineStart}. Edits
+     * {@code remember} the result as the new hint, drawing only reads it so
+     * painting other rows does not evict the hint for the row being typed in.
+     */
+    private long offsetOfColumn(long lineStart, long end, int column, boolean remember) {
+        long from = lineStart;
+        int reached = 0;
+        if (hintVersion == version && hintLineStart == lineStart && hintColumn <= column) {
+            from = hintOffset;
+            reached = hintColumn;
+        }
+        long offset = advance(from, end, Math.max(0, column - reached));
+        if (!remember) {
+            return offset;
+        }
+        hintVersion = version;
+        hintLineStart = lineStart;
+        hintColumn = reached + advanced;
+        hintOffset = offset;
+        return offset;
+    }
+
+    /**
+     * Moves {@code columns} chars forward from {@code from} without passing
+     * {@code limit}, leaving the number of chars actually skipped in
+     * {@link #advanced}.
+     */
+    private long advance(long from, long limit, int columns) {
+        if (singleByte) {
+            long to = Math.min(limit, from + columns);
+            advanced = (int) (to - from);
+            return to;
+        }
+        long position = from;
+        int chars = 0;
+        while (position < limit) {
+            int count = (int) Math.min(scratch.length, limit - position);
+            copy(root, position, position + count, scratch, 0);
+            for (int i = 0; i < count; i++) {
+                byte b = scratch[i];
+                if ((b & 0xC0) != 0x80) {
+                    if (chars >= columns) {
+                        advanced = chars;
+                        return position + i;
+                    }
+                    // a four byte sequence decodes to a surrogate pair
+                    chars += (b & 0xF8) == 0xF0 ? 2 : 1;
+                }
+            }
+            position += count;
+        }
+        advanced = chars;
+        return limit;
+    }
+
+    private String decode(long from, long to) {
+        int count = (int) (to - from);
+        if (decodeBuffer.length < count) {
+            decodeBuffer = new byte[Math.max(count, decodeBuffer.length * 2)];
+        }
+        copy(root, from, to, decodeBuffer, 0);
+        return new String(decodeBuffer, 0, count, charset);
+    }
+
+    /**
+     * Decodes {@code [from, to)} into {@code chars}, or a new buffer if it
+     * is too small, the way {@link #decode(long, long)} does.
+     */
+    private CharBuffer decode(long from, long to, CharBuffer chars) {
+        int count = (int) (to - from);
+        if (decodeBuffer.length < count) {
+            decodeBuffer = new byte[Math.max(count, decodeBuffer.length * 2)];
+        }
+        if (decodeBytes.array() != decodeBuffer) {
+            decodeBytes = ByteBuffer.wrap(decodeBuffer);
+        }
+        // a byte never decodes to more than one char but for a four byte
+        // sequence, which makes two
+        if (chars == null || chars.capacity() < count) {
+            chars = CharBuffer.allocate(Math.max(count, chars == null ? 256 : chars.capacity() * 2));
+        }
+        copy(root, from, to, decodeBuffer, 0);
+        decodeBytes.clear().limit(count);
+        chars.clear();
+        decoder.reset();
+        decoder.decode(decodeBytes, chars, true);
+        decoder.flush(chars);
+        return chars.flip();
+    }
+
+    private byte byteAt(long offset) {
+        Node node = root;
+        while (node != null) {
+            long leftLength = length(node.left);
+            if (offset < leftLength) {
+                node = node.left;
+            } else if (offset < leftLength + node.length) {
+                return node.lines.source().byteAt(node.start + offset - leftLength);
+            } else {
+                offset -= leftLength + node.length;
+                node = node.right;
+            }
+        }
+        throw new IndexOutOfBoundsException(offset);
+    }
+
+    /**
+     * Copies the document range {@code [from, to)}, relative to the start of
+     * {@code node}'s subtree, into {@code destination}.
+     */
+    private void copy(Node node, long from, long to, byte[] destination, int offset) {
+        if (node == null || from >= to) {
+            return;
+        }
+        long pieceStart = length(node.left);
+        long pieceEnd = pieceStart + node.length;
+        if (from < pieceStart) {
+            copy(node.left, from, Math.min(to, pieceStart), destination, offset);
+        }
+        if (from < pieceEnd && to > pieceStart) {
+            long a = Math.max(from, pieceStart);
+            long b = Math.min(to, pieceEnd);
+            node.lines.source().copy(node.start + a - pieceStart, destination, offset + (int) (a - from),
+                    (int) (b - a));
+        }
+        if (to > pieceEnd) {
+            long a = Math.max(from, pieceEnd);
+            copy(node.right, a - pieceEnd, to - pieceEnd, destination, offset + (int) (a - from));
+        }
+    }
+
+    private void insertBytes(long offset, byte[] bytes) {
+        if (bytes.length == 0) {
+            return;
+        }
+        long addedStart = added.length();
+        added.append(bytes, 0, bytes.length);
+        split(root, offset);
+        Node right = splitRight;
+        root = merge(append(splitLeft, addedLines, addedStart, bytes.length), right);
+        version++;
+    }
+
+    /**
+     * Appends a piece to the end of {@code tree}, growing the last piece in
+     * place when it already ends where the new one starts. That is the common
+     * case both for typing and for taking in more of the original file.
+     */
+    private Node append(Node tree, LineIndex lines, long start, long length) {
+        Node last = tree;
+        while (last != null && last.right != null) {
+            last = last.right;
+        }
+        if (last == null || last.lines != lines || last.start + last.length != start) {
+            return merge(tree, newNode(lines, start, length));
+        }
+        long lineFeeds = lines.lineFeedsBefore(start + length) - lines.lineFeedsBefore(start);
+        for (Node node = tree; node != null; node = node.right) {
+            node.totalLength += length;
+            node.totalLineFeeds += lineFeeds;
+        }
+        last.length += length;
+        last.lineFeeds += lineFeeds;
+        return tree;
+    }
+
+    private void deleteBytes(long offset, long count) {
+        if (count <= 0) {
+            return;
+        }
+        split(root, offset);
+        Node left = splitLeft;
+        split(splitRight, count);
+        root = merge(left, splitRight);
+        version++;
+    }
+
+    /**
+     * Splits {@code node} into {@link #splitLeft} holding {@code [0, offset)}
+     * and {@link #splitRight} holding the rest, cutting a piece in two if the
+     * offset falls inside it.
+     */
+    private void split(Node node, long offset) {
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        long leftLength = length(node.left);
+        if (offset <= leftLength) {
+            split(node.left, offset);
+            node.left = splitRight;
+            splitRight = update(node);
+        } else if (offset >= leftLength + node.length) {
+            split(node.right, offset - leftLength - node.length);
+            node.right = splitLeft;
+            splitLeft = update(node);
+        } else {
+            long cut = offset - leftLength;
+            Node tail = newNode(node.lines, node.start + cut, node.length - cut);
+            node.length = cut;
+            node.lineFeeds = node.lines.lineFeedsBefore(node.start + cut) - node.lineFeedsBefore;
+            Node right = node.right;
+            node.right = null;
+            splitLeft = update(node);
+            splitRight = merge(tail, right);
+        }
+    }
+
+    private Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return update(a);
+        }
+        b.left = merge(a, b.left);
+        return update(b);
+    }
+
+    private Node newNode(LineIndex lines, long start, long length) {
+        Node node = new Node(lines, start, random.nextInt());
+        node.length = length;
+        node.lineFeedsBefore = lines.lineFeedsBefore(start);
+        node.lineFeeds = lines.lineFeedsBefore(start + length) - node.lineFeedsBefore;
+        return update(node);
+    }
+
+    private static Node update(Node node) {
+        node.totalLength = length(node.left) + node.length + length(node.right);
+        node.totalLineFeeds = lineFeeds(node.left) + node.lineFeeds + lineFeeds(node.right);
+        return node;
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : count(node.left) + 1 + count(node.right);
+    }
+
+    private static long length(Node node) {
+        return node == null ? 0 : node.totalLength;
+    }
+
+    private static long lineFeeds(Node node) {
+        return node == null ? 0 : node.totalLineFeeds;
+    }
+
+    private static byte[] detectNewline(ByteSource source) {
+        long lineFeed = source.indexOf((byte) '\n', 0, Math.min(source.length(), 1 << 20));
+        if (lineFeed > 0 && source.byteAt(lineFeed - 1) == '\r') {
+            return new byte[] { '\r', '\n' };
+        }
+        if (lineFeed >= 0) {
+            return new byte[] { '\n' };
+        }
+        return System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class Node {
+        final LineIndex lines;
+        final long start;
+        final int priority;
+        long length;
+        long lineFeedsBefore;
+        long lineFeeds;
+        long totalLength;
+        long totalLineFeeds;
+        Node left;
+        Node right;
+
+        Node(LineIndex lines, long start, int priority) {
+            this.lines = lines;
+            this.start = start;
+            this.priority = priority;
+        }
+    }
+}
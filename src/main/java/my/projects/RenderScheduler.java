@@ -0,0 +1,111 @@
+package my.projects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paints frames on a thread of its own. Input handling only marks the screen
+ * dirty; a frame is composed once the editor lock is free, i.e. once all
+ * pending input has been handled, and never more often than the configured
+ * frame rate. The frame is written to the terminal without holding the lock,
+ * so a slow terminal does not hold up editing.
+ */
+class RenderScheduler implements Runnable {
+    private final ReentrantLock lock;
+    private final Condition frameRequested;
+    private final long frameIntervalNanos;
+    private final Runnable compose;
+    private final Runnable write;
+    private Thread thread;
+    private boolean running;
+    private boolean dirty;
+    private long lastFrame;
+
+    /**
+     * @param lock    lock guarding the editor state, held by {@code compose}
+     * @param fps     maximum number of frames per second
+     * @param compose composes the next frame from the editor state
+     * @param write   sends the composed frame to the terminal
+     */
+    RenderScheduler(ReentrantLock lock, int fps, Runnable compose, Runnable write) {
+        this.lock = lock;
+        this.frameRequested = lock.newCondition();
+        this.frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+        this.compose = compose;
+        this.write = write;
+    }
+
+    void start() {
+        running = true;
+        thread = new Thread(this, "editor-render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Asks for a frame to be painted. Must be called holding the lock.
+     */
+    void requestFrame() {
+        dirty = true;
+        frameRequested.signal();
+    }
+
+    /**
+     * Stops painting, waiting for a frame being written to finish. Must be
+     * called holding the lock.
+     */
+    void stop() {
+        running = false;
+        frameRequested.signal();
+        int holds = lock.getHoldCount();
+        for (int i = 0; i < holds; i++) {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < holds; i++) {
+                lock.lock();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        lock.lock();
+        try {
+            while (true) {
+                while (running && !dirty) {
+                    frameRequested.awaitUninterruptibly();
+                }
+                if (!running) {
+                    return;
+                }
+                long wait = lastFrame + frameIntervalNanos - System.nanoTime();
+                if (wait > 0) {
+                    // keep collecting input until the next frame is due
+                    try {
+                        frameRequested.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                dirty = false;
+                compose.run();
+                lastFrame = System.nanoTime();
+                lock.unlock();
+                try {
+                    write.run();
+                } finally {
+                    lock.lock();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Replays a session recorded with {@code -Deditor.record=<trace>} on a
+ * {@link VirtualTerminal}, as fast as the editor takes the input in, and
+ * prints a line of JSON with the time taken and the bytes painted.
+ * <p>
+ * Usage: {@code Replay <trace> [file] [--size ROWSxCOLUMNS] [--screen]}.
+ * The file is edited as a copy, so saves in the trace leave it alone.
+ * {@code --screen} also prints what the terminal shows at the end.
+ */
+public final class Replay {
+    private Replay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path tracePath = null;
+        Path file = null;
+        WindowSize size = null;
+        boolean printScreen = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--screen" -> printScreen = true;
+                case "--size" -> {
+                    String[] dimensions = args[++i].split("x");
+                    size = new WindowSize(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+                }
+                default -> {
+                    if (tracePath == null) {
+                        tracePath = Path.of(args[i]);
+                    } else {
+                        file = Path.of(args[i]);
+                    }
+                }
+            }
+        }
+        if (tracePath == null) {
+            System.err.println("Usage: Replay <trace> [file] [--size ROWSxCOLUMNS] [--screen]");
+            System.exit(2);
+        }
+
+        KeyTrace trace = KeyTrace.read(tracePath);
+        VirtualTerminal terminal = new VirtualTerminal(size != null ? size : trace.size());
+        for (byte[] chunk : trace.chunks()) {
+            terminal.feed(chunk);
+        }
+        terminal.endInput();
+
+        TextEditor.initEditor(terminal, terminal.output());
+        Path copy = null;
+        if (file != null) {
+            copy = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".replay");
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            TextEditor.openFile(copy);
+        }
+        try {
+            long started = System.nanoTime();
+            TextEditor.run();
+            // the last frame may still have been waiting for its turn
+            TextEditor.refreshScreen();
+            TextEditor.flush();
+            long elapsed = System.nanoTime() - started;
+
+            System.out.println(String.format(Locale.ROOT,
+                    "{\"chunks\":%d,\"inputBytes\":%d,\"millis\":%.1f,\"chunksPerSecond\":%.0f,"
+                            + "\"outputBytes\":%d,\"writes\":%d}",
+                    trace.chunks().size(), trace.bytes(), elapsed / 1e6, trace.chunks().size() * 1e9 / elapsed,
+                    terminal.bytesWritten(), terminal.writes()));
+            if (printScreen) {
+                System.out.print(terminal.screen().text());
+            }
+        } finally {
+            if (copy != null) {
+                Files.deleteIfExists(copy);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package my.projects;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.jna.Platform;
+
+/**
+ * Writes a {@link TextSnapshot} over a file on a thread of its own, so
+ * editing goes on while a big file is being saved.
+ * <p>
+ * The bytes go to a temporary file next to the target through large direct
+ * buffers, unchanged regions of a memory mapped file being written straight
+ * from the mapping. The temporary file is forced to disk and renamed over the
+ * target, so a crash leaves either the old or the new file, never a torn one.
+ * The target is the file a symbolic link points to, and the temporary file
+ * takes on its permissions, and its owner and group where the user may set
+ * them. A file with other hard links is copied over in place instead, which
+ * keeps them but gives up on the atomic rename. Windows refuses to replace a
+ * file that is still mapped, so there a mapped buffer is not saved at all.
+ * <p>
+ * A gzip file is written back compressed, as a gzip member per block of the
+ * snapshot. The blocks are compressed in parallel and written in order, so
+ * saving a big compressed log is not held up by a single core; gzip, zcat
+ * and {@link Gunzip} read the members back as one stream.
+ */
+final class Save implements Runnable {
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final long TRANSFER_SIZE = 64 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final TextSnapshot snapshot;
+    private final Path file;
+    private final boolean compress;
+    private final boolean mapped;
+    private final long progressIntervalNanos;
+    private final Runnable onProgress;
+    private final Consumer<Save> onDone;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+    private volatile long written;
+    private volatile IOException failure;
+    private long lastProgress;
+
+    private Save(TextSnapshot snapshot, Path file, boolean compress, boolean mapped, long progressIntervalMillis,
+            Runnable onProgress, Consumer<Save> onDone) {
+        this.snapshot = snapshot;
+        this.file = file;
+        this.compress = compress;
+        this.mapped = mapped;
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+        this.onProgress = onProgress;
+        this.onDone = onDone;
+    }
+
+    /**
+     * Starts saving {@code snapshot} to {@code file}, gzip compressed if
+     * {@code compress}, running {@code onProgress} at most every
+     * {@code progressIntervalMillis} while writing and {@code onDone} once the
+     * file is in place or saving failed. A buffer that has the file
+     * {@code mapped} cannot have it changed in place.
+     */
+    static Save start(TextSnapshot snapshot, Path file, boolean compress, boolean mapped,
+            long progressIntervalMillis, Runnable onProgress, Consumer<Save> onDone) {
+        Save save = new Save(snapshot, file, compress, mapped, progressIntervalMillis, onProgress, onDone);
+        Thread thread = new Thread(save, "editor-save");
+        thread.setDaemon(true);
+        thread.start();
+        return save;
+    }
+
+    /**
+     * Saves {@code snapshot} to {@code file} on this thread.
+     */
+    static void write(TextSnapshot snapshot, Path file, boolean compress, boolean mapped) throws IOException {
+        Save save = new Save(snapshot, file, compress, mapped, Long.MAX_VALUE, () -> {
+        }, done -> {
+        });
+        save.run();
+        if (save.failure != null) {
+            throw save.failure;
+        }
+    }
+
+    boolean isRunning() {
+        return !result.isDone();
+    }
+
+    /**
+     * Returns why saving failed, or null if it has not.
+     */
+    IOException failure() {
+        return failure;
+    }
+
+    int percentDone() {
+        long length = snapshot.length();
+        return length == 0 ? 100 : (int) (written * 100 / length);
+    }
+
+    /**
+     * Blocks until the file is saved or saving failed.
+     */
+    void await() {
+        result.join();
+    }
+
+    @Override
+    public void run() {
+        lastProgress = System.nanoTime();
+        try {
+            boolean exists = Files.exists(file);
+            Path target = exists ? file.toRealPath() : file.toAbsolutePath();
+            boolean inPlace = exists && hardLinked(target);
+            if (exists && mapped && Platform.isWindows()) {
+                // the mapping lives until the buffer is collected
+                throw new IOException("%s is memory mapped, Windows does not allow replacing it".formatted(file));
+            }
+            if (inPlace && mapped) {
+                // the buffer still reads from a mapping of the file
+                throw new IOException("%s has other hard links, saving it would break them while it is mapped"
+                        .formatted(file));
+            }
+            Path directory = target.getParent();
+            Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+            try {
+                if (exists) {
+                    copyAttributes(target, temp);
+                }
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    if (compress) {
+                        writeCompressed(channel);
+                    } else {
+                        snapshot.writeTo(channel, ByteBuffer.allocateDirect(BUFFER_SIZE), TRANSFER_SIZE,
+                                this::written);
+                    }
+                    channel.force(true);
+                }
+                if (inPlace) {
+                    copyOver(temp, target);
+                    Files.delete(temp);
+                } else {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            forceDirectory(directory);
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            onDone.accept(this);
+            result.complete(null);
+        }
+    }
+
+    private static boolean hardLinked(Path target) throws IOException {
+        return target.getFileSystem().supportedFileAttributeViews().contains("unix")
+                && (int) Files.getAttribute(target, "unix:nlink") > 1;
+    }
+
+    /**
+     * Gives {@code temp} the permissions of {@code target}, and its owner and
+     * group if the user may, which for the owner takes root.
+     */
+    private static void copyAttributes(Path target, Path temp) throws IOException {
+        if (Files.getFileAttributeView(target, PosixFileAttributeView.class) == null) {
+            return;
+        }
+        PosixFileAttributes attributes = Files.readAttributes(target, PosixFileAttributes.class);
+        PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+        try {
+            view.setGroup(attributes.group());
+        } catch (IOException e) {
+            // not a group the user is in
+        }
+        try {
+            view.setOwner(attributes.owner());
+        } catch (IOException e) {
+            // not the user's to give away
+        }
+        // after the owner, which may clear the set-user-ID bit
+        view.setPermissions(attributes.permissions());
+    }
+
+    /**
+     * Overwrites {@code target} with the bytes of {@code temp}, which are on
+     * disk already and stay there should this be cut short.
+     */
+    private static void copyOver(Path temp, Path target) throws IOException {
+        try (FileChannel from = FileChannel.open(temp, StandardOpenOption.READ);
+                FileChannel to = FileChannel.open(target, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = from.size();
+            for (long position = 0; position < size;) {
+                position += to.transferFrom(from, position, size - position);
+            }
+            to.force(true);
+        }
+    }
+
+    /**
+     * Writes the snapshot as gzip members of {@code BLOCK_SIZE} bytes each,
+     * keeping a few blocks per core being compressed ahead of the one being
+     * written.
+     */
+    private void writeCompressed(FileChannel channel) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int ahead = 2 * pool.getParallelism();
+        long length = snapshot.length();
+        ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+        long next = 0;
+        long done = 0;
+        // an empty file is still one, empty, member
+        do {
+            while (pending.size() < ahead && (next < length || next == 0)) {
+                long from = next;
+                int count = (int) Math.min(BLOCK_SIZE, length - from);
+                pending.add(CompletableFuture.supplyAsync(() -> compress(from, count), pool));
+                next = from + Math.max(1, count);
+            }
+            byte[] member;
+            try {
+                member = pending.remove().join();
+            } catch (CompletionException e) {
+                throw new IOException(e.getCause());
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(member);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            done = Math.min(length, done + BLOCK_SIZE);
+            written(done);
+        } while (!pending.isEmpty());
+    }
+
+    private byte[] compress(long from, int count) {
+        byte[] block = new byte[count];
+        snapshot.copy(from, block, 0, count);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(block);
+        } catch (IOException e) {
+            // never thrown writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private void written(long bytes) {
+        written = bytes;
+        long now = System.nanoTime();
+        if (now - lastProgress >= progressIntervalNanos) {
+            lastProgress = now;
+            onProgress.run();
+        }
+    }
+
+    /**
+     * Makes the rename durable too. Not every platform can open a directory,
+     * the rename is atomic either way.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package my.projects;
+
+import java.util.Arrays;
+
+/**
+ * Shadow copy of what is currently shown on the terminal. A row is only
+ * composed again when it was marked dirty and only sent when it differs from
+ * what was sent last time. Small vertical scrolls are left to the terminal
+ * through a scroll region, so only the rows scrolled into view are sent.
+ * <p>
+ * Every screen row remembers the row of the buffer it shows, and which part
+ * of it when rows are wrapped, so rows are marked by what they show rather
+ * than by where they are.
+ */
+class Screen {
+    private final int rows;
+    private final byte[][] shadow;
+    private final byte[][] spare;
+    private final int[] shadowLength;
+    private final boolean[] dirty;
+    private final int[] fileRows;
+    private final int[] parts;
+    private final OutputBuffer row = new OutputBuffer(256);
+    private int drawnOffsetX;
+    private int drawnOffsetY;
+    private boolean clear;
+
+    /**
+     * @param rows number of text rows, the status bar is drawn below them
+     */
+    Screen(int rows) {
+        this.rows = rows;
+        this.shadow = new byte[rows + 1][];
+        this.spare = new byte[rows][];
+        this.shadowLength = new int[rows + 1];
+        this.dirty = new boolean[rows + 1];
+        this.fileRows = new int[rows];
+        this.parts = new int[rows];
+        invalidate();
+    }
+
+    void invalidate() {
+        Arrays.fill(shadowLength, -1);
+        Arrays.fill(dirty, true);
+        clear = true;
+    }
+
+    void markRow(int fileRow) {
+        for (int row = 0; row < rows; row++) {
+            dirty[row] |= fileRows[row] == fileRow;
+        }
+    }
+
+    void markRowsFrom(int fileRow) {
+        for (int row = 0; row < rows; row++) {
+            dirty[row] |= fileRows[row] >= fileRow;
+        }
+    }
+
+    /**
+     * Returns whether screen row {@code row} has to be composed again to show
+     * part {@code part} of {@code fileRow}, rows past the end of the buffer
+     * being shown as the row count.
+     */
+    boolean isDirty(int row, int fileRow, int part) {
+        return dirty[row] || fileRows[row] != fileRow || parts[row] != part;
+    }
+
+    /**
+     * Brings the shadow in line with the new viewport before any row is drawn.
+     */
+    void beginFrame(int offsetY, int offsetX, OutputBuffer frame) {
+        if (clear) {
+            frame.append("\033[2J");
+            clear = false;
+        }
+        if (offsetX != drawnOffsetX) {
+            Arrays.fill(dirty, 0, rows, true);
+            drawnOffsetX = offsetX;
+        }
+        int delta = offsetY - drawnOffsetY;
+        if (delta == 0) {
+            return;
+        }
+        if (Math.abs(delta) <= rows / 2) {
+            frame.append("\033[1;").append(rows).append('r')
+                    .append("\033[").append(Math.abs(delta)).append(delta > 0 ? 'S' : 'T')
+                    .append("\033[r");
+            shift(delta);
+        } else {
+            Arrays.fill(dirty, 0, rows, true);
+        }
+        drawnOffsetY = offsetY;
+    }
+
+    /**
+     * Returns the cleared buffer the status bar is composed in.
+     */
+    OutputBuffer beginStatusRow() {
+        this.row.clear();
+        return this.row;
+    }
+
+    /**
+     * Returns the cleared buffer screen row {@code row} is composed in, to
+     * show part {@code part} of {@code fileRow}.
+     */
+    OutputBuffer beginRow(int row, int fileRow, int part) {
+        fileRows[row] = fileRow;
+        parts[row] = part;
+        this.row.clear();
+        return this.row;
+    }
+
+    /**
+     * Sends the row composed since {@link #beginRow(int, int, int)} unless the screen is
+     * already showing exactly that.
+     */
+    void endRow(int row, OutputBuffer frame) {
+        dirty[row] = false;
+        if (shadowLength[row] >= 0 && this.row.contentEquals(shadow[row], shadowLength[row])) {
+            return;
+        }
+        frame.append("\033[").append(row + 1).append(";1H")
+                .append(this.row)
+                .append("\033[K");
+        shadow[row] = this.row.copyTo(shadow[row]);
+        shadowLength[row] = this.row.length();
+    }
+
+    private void shift(int delta) {
+        int distance = Math.abs(delta);
+        int from = delta > 0 ? distance : 0;
+        int to = delta > 0 ? 0 : distance;
+        int exposedStart = delta > 0 ? rows - distance : 0;
+        // rotate the shadow so the row buffers scrolled off are reused for the
+        // rows scrolled in
+        System.arraycopy(shadow, delta > 0 ? 0 : rows - distance, spare, 0, distance);
+        System.arraycopy(shadow, from, shadow, to, rows - distance);
+        System.arraycopy(shadowLength, from, shadowLength, to, rows - distance);
+        System.arraycopy(dirty, from, dirty, to, rows - distance);
+        System.arraycopy(fileRows, from, fileRows, to, rows - distance);
+        System.arraycopy(parts, from, parts, to, rows - distance);
+        System.arraycopy(spare, 0, shadow, exposedStart, distance);
+        Arrays.fill(shadowLength, exposedStart, exposedStart + distance, 0);
+        Arrays.fill(dirty, exposedStart, exposedStart + distance, true);
+    }
+}
@@ -0,0 +1,256 @@
+package my.projects;
+
+import java.util.Arrays;
+
+/**
+ * What a terminal would show after being sent a stream of output: a grid of
+ * code points, updated by the subset of ANSI/VT100 sequences the editor
+ * emits. Cursor movement, erasing, scroll regions and scrolling are
+ * followed; colours and modes are parsed and ignored.
+ */
+class ScreenModel {
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int CSI = 2;
+
+    private final int rows;
+    private final int columns;
+    private final int[][] cells;
+    private int cursorRow;
+    private int cursorColumn;
+    // the cursor is past the last column, the next character wraps
+    private boolean pendingWrap;
+    private int top;
+    private int bottom;
+
+    private int state = GROUND;
+    private final int[] parameters = new int[16];
+    private int parameterCount;
+    private boolean privateMode;
+    private int codePoint;
+    private int continuationBytes;
+
+    ScreenModel(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = new int[rows][columns];
+        this.bottom = rows - 1;
+        clear(0, rows);
+    }
+
+    int cursorRow() {
+        return cursorRow;
+    }
+
+    int cursorColumn() {
+        return cursorColumn;
+    }
+
+    /**
+     * Returns {@code row} without trailing blanks.
+     */
+    String row(int row) {
+        int[] cells = this.cells[row];
+        int end = columns;
+        while (end > 0 && cells[end - 1] == ' ') {
+            end--;
+        }
+        return new String(cells, 0, end);
+    }
+
+    /**
+     * Returns every row, each followed by a line feed.
+     */
+    String text() {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            text.append(row(row)).append('\n');
+        }
+        return text.toString();
+    }
+
+    void write(byte[] bytes, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            write(bytes[i] & 0xFF);
+        }
+    }
+
+    private void write(int b) {
+        switch (state) {
+            case ESCAPE -> {
+                if (b == '[') {
+                    state = CSI;
+                    parameterCount = 0;
+                    parameters[0] = 0;
+                    privateMode = false;
+                } else {
+                    state = GROUND;
+                }
+            }
+            case CSI -> csi(b);
+            default -> ground(b);
+        }
+    }
+
+    private void ground(int b) {
+        if (continuationBytes > 0 && (b & 0xC0) == 0x80) {
+            codePoint = codePoint << 6 | b & 0x3F;
+            if (--continuationBytes == 0) {
+                print(codePoint);
+            }
+            return;
+        }
+        continuationBytes = 0;
+        if (b >= 0xF0) {
+            codePoint = b & 0x07;
+            continuationBytes = 3;
+        } else if (b >= 0xE0) {
+            codePoint = b & 0x0F;
+            continuationBytes = 2;
+        } else if (b >= 0xC0) {
+            codePoint = b & 0x1F;
+            continuationBytes = 1;
+        } else if (b == 0x1B) {
+            state = ESCAPE;
+        } else if (b == '\r') {
+            cursorColumn = 0;
+            pendingWrap = false;
+        } else if (b == '\n') {
+            lineFeed();
+        } else if (b == '\b') {
+            cursorColumn = Math.max(0, cursorColumn - 1);
+            pendingWrap = false;
+        } else if (b == '\t') {
+            cursorColumn = Math.min(columns - 1, (cursorColumn / 8 + 1) * 8);
+        } else if (b >= ' ' && b < 0x7F || b >= 0x80) {
+            print(b);
+        }
+    }
+
+    private void csi(int b) {
+        if (b >= '0' && b <= '9') {
+            parameters[parameterCount] = parameters[parameterCount] * 10 + b - '0';
+        } else if (b == ';') {
+            if (parameterCount < parameters.length - 1) {
+                parameters[++parameterCount] = 0;
+            }
+        } else if (b == '?') {
+            privateMode = true;
+        } else if (b >= 0x40 && b <= 0x7E) {
+            parameterCount++;
+            state = GROUND;
+            if (!privateMode) {
+                command(b);
+            }
+        }
+    }
+
+    private void command(int command) {
+        switch (command) {
+            case 'H', 'f' -> moveTo(parameter(0, 1) - 1, parameter(1, 1) - 1);
+            case 'A' -> moveTo(cursorRow - parameter(0, 1), cursorColumn);
+            case 'B' -> moveTo(cursorRow + parameter(0, 1), cursorColumn);
+            case 'C' -> moveTo(cursorRow, cursorColumn + parameter(0, 1));
+            case 'D' -> moveTo(cursorRow, cursorColumn - parameter(0, 1));
+            case 'K' -> {
+                int[] row = cells[cursorRow];
+                switch (parameter(0, 0)) {
+                    case 0 -> Arrays.fill(row, pendingWrap ? columns : cursorColumn, columns, ' ');
+                    case 1 -> Arrays.fill(row, 0, Math.min(columns, cursorColumn + 1), ' ');
+                    default -> Arrays.fill(row, ' ');
+                }
+            }
+            case 'J' -> {
+                switch (parameter(0, 0)) {
+                    case 0 -> {
+                        Arrays.fill(cells[cursorRow], cursorColumn, columns, ' ');
+                        clear(cursorRow + 1, rows);
+                    }
+                    case 1 -> {
+                        clear(0, cursorRow);
+                        Arrays.fill(cells[cursorRow], 0, Math.min(columns, cursorColumn + 1), ' ');
+                    }
+                    default -> clear(0, rows);
+                }
+            }
+            case 'r' -> {
+                top = Math.max(0, parameter(0, 1) - 1);
+                bottom = Math.min(rows, parameter(1, rows)) - 1;
+                if (top >= bottom) {
+                    top = 0;
+                    bottom = rows - 1;
+                }
+                moveTo(0, 0);
+            }
+            case 'S' -> scrollUp(parameter(0, 1));
+            case 'T' -> scrollDown(parameter(0, 1));
+            default -> {
+                // colours and anything else that does not change the text
+            }
+        }
+    }
+
+    /**
+     * Returns parameter {@code index} of the sequence just parsed, or
+     * {@code otherwise} if it was left out or zero.
+     */
+    private int parameter(int index, int otherwise) {
+        return index < parameterCount && parameters[index] != 0 ? parameters[index] : otherwise;
+    }
+
+    private void moveTo(int row, int column) {
+        cursorRow = Math.max(0, Math.min(rows - 1, row));
+        cursorColumn = Math.max(0, Math.min(columns - 1, column));
+        pendingWrap = false;
+    }
+
+    private void print(int codePoint) {
+        if (pendingWrap) {
+            cursorColumn = 0;
+            lineFeed();
+        }
+        cells[cursorRow][cursorColumn] = codePoint;
+        if (cursorColumn == columns - 1) {
+            pendingWrap = true;
+        } else {
+            cursorColumn++;
+        }
+    }
+
+    private void lineFeed() {
+        pendingWrap = false;
+        if (cursorRow == bottom) {
+            scrollUp(1);
+        } else if (cursorRow < rows - 1) {
+            cursorRow++;
+        }
+    }
+
+    private void scrollUp(int count) {
+        count = Math.min(count, bottom - top + 1);
+        for (int row = top; row <= bottom; row++) {
+            if (row + count <= bottom) {
+                System.arraycopy(cells[row + count], 0, cells[row], 0, columns);
+            } else {
+                Arrays.fill(cells[row], ' ');
+            }
+        }
+    }
+
+    private void scrollDown(int count) {
+        count = Math.min(count, bottom - top + 1);
+        for (int row = bottom; row >= top; row--) {
+            if (row - count >= top) {
+                System.arraycopy(cells[row - count], 0, cells[row], 0, columns);
+            } else {
+                Arrays.fill(cells[row], ' ');
+            }
+        }
+    }
+
+    private void clear(int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            Arrays.fill(cells[row], ' ');
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package my.projects;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds and replaces text in a {@link TextSnapshot} off the input thread.
+ * The snapshot is cut into chunks that are processed in parallel, a wave of
+ * chunks at a time so results come out in document order and a job can stop
+ * early once it is cancelled or, for searches, has found
+ * {@link #MAX_MATCHES}.
+ * <p>
+ * Plain queries are matched on the raw bytes with Boyer-Moore-Horspool.
+ * Regular expressions are matched a line at a time, so chunks for them are
+ * cut at line boundaries.
+ */
+class SearchEngine {
+    static final int MAX_MATCHES = 1 << 22;
+    private static final int CHUNK = 4 * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+
+    SearchEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    Search find(TextSnapshot snapshot, String query, Charset charset) {
+        byte[] pattern = query.getBytes(charset);
+        int[] shifts = shifts(pattern);
+        Search search = new Search(query, false, snapshot.length());
+        search.result = CompletableFuture.supplyAsync(() -> {
+            inWaves(snapshot, search, false, (from, to) -> scanChunk(snapshot, from, to, pattern, shifts),
+                    search::add);
+            return search;
+        }, pool);
+        return search;
+    }
+
+    /**
+     * Finds the matches of {@code regex} within single lines.
+     *
+     * @throws java.util.regex.PatternSyntaxException if {@code regex} is not
+     *                                                a valid expression
+     */
+    Search findRegex(TextSnapshot snapshot, String regex, Charset charset) {
+        Pattern pattern = Pattern.compile(regex);
+        Search search = new Search(regex, true, snapshot.length());
+        search.result = CompletableFuture.supplyAsync(() -> {
+            inWaves(snapshot, search, true, (from, to) -> matchChunk(snapshot, from, to, pattern, charset),
+                    search::add);
+            return search;
+        }, pool);
+        return search;
+    }
+
+    /**
+     * Replaces every match of {@code regex} within single lines. Nothing is
+     * changed until the returned job is {@link Replace#apply applied}.
+     *
+     * @throws java.util.regex.PatternSyntaxException if {@code regex} is not
+     *                                                a valid expression
+     */
+    Replace replaceAll(TextSnapshot snapshot, String regex, String replacement, Charset charset) {
+        Pattern pattern = Pattern.compile(regex);
+        Replace replace = new Replace(snapshot.length());
+        replace.result = CompletableFuture.supplyAsync(() -> {
+            inWaves(snapshot, replace, true,
+                    (from, to) -> replaceChunk(snapshot, from, to, pattern, replacement, charset), replace::add);
+            return replace;
+        }, pool);
+        return replace;
+    }
+
+    private interface ChunkTask<T> {
+        T run(long from, long to);
+    }
+
+    private interface ChunkSink<T> {
+        /**
+         * Takes the result of the next chunk, returning false once no more
+         * are wanted.
+         */
+        boolean accept(T result);
+    }
+
+    private <T> void inWaves(TextSnapshot snapshot, Job job, boolean wholeLines, ChunkTask<T> task,
+            ChunkSink<T> sink) {
+        long length = snapshot.length();
+        long from = 0;
+        boolean wanted = true;
+        while (from < length && wanted) {
+            List<Callable<T>> wave = new ArrayList<>();
+            for (int i = 0; i < pool.getParallelism() && from < length; i++) {
+                long chunkStart = from;
+                long chunkEnd = Math.min(length, from + CHUNK);
+                if (wholeLines && chunkEnd < length) {
+                    long lineFeed = snapshot.indexOf((byte) '\n', chunkEnd - 1);
+                    chunkEnd = lineFeed < 0 ? length : lineFeed + 1;
+                }
+                long end = chunkEnd;
+                wave.add(() -> {
+                    if (job.cancelled) {
+                        throw new CancellationException();
+                    }
+                    T result = task.run(chunkStart, end);
+                    job.progress.addAndGet(end - chunkStart);
+                    return result;
+                });
+                from = chunkEnd;
+            }
+            for (Future<T> chunk : pool.invokeAll(wave)) {
+                if (job.cancelled) {
+                    throw new CancellationException();
+                }
+                wanted = sink.accept(join(chunk)) && wanted;
+            }
+        }
+        if (from < length) {
+            job.truncated = true;
+        }
+    }
+
+    /**
+     * Returns the offsets of the matches starting in {@code [from, to)}, the
+     * last one reading up to {@code pattern.length - 1} bytes past {@code to}.
+     */
+    private static long[] scanChunk(TextSnapshot snapshot, long from, long to, byte[] pattern, int[] shifts) {
+        int last = pattern.length - 1;
+        int count = (int) (Math.min(snapshot.length(), to + last) - from);
+        byte[] text = new byte[count];
+        snapshot.copy(from, text, 0, count);
+
+        long[] matches = new long[16];
+        int found = 0;
+        int end = count - last;
+        byte tail = pattern[last];
+        for (int i = 0; i < end; i += shifts[text[i + last] & 0xFF]) {
+            if (text[i + last] == tail && matchesAt(text, i, pattern, last)) {
+                if (found == matches.length) {
+                    matches = Arrays.copyOf(matches, found * 2);
+                }
+                matches[found++] = from + i;
+            }
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    private static long[] matchChunk(TextSnapshot snapshot, long from, long to, Pattern pattern, Charset charset) {
+        byte[] text = new byte[(int) (to - from)];
+        snapshot.copy(from, text, 0, text.length);
+
+        long[] matches = new long[16];
+        int found = 0;
+        Matcher matcher = pattern.matcher("");
+        for (int start = 0; start < text.length;) {
+            int end = lineEnd(text, start);
+            String line = new String(text, start, contentEnd(text, start, end) - start, charset);
+            matcher.reset(line);
+            while (matcher.find()) {
+                if (found == matches.length) {
+                    matches = Arrays.copyOf(matches, found * 2);
+                }
+                matches[found++] = from + start + encodedLength(line, matcher.start(), charset);
+            }
+            start = end;
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    /**
+     * Returns a replacement of the chunk's bytes from the first to the last
+     * changed line, or null if no line in it matches.
+     */
+    private static Replaced replaceChunk(TextSnapshot snapshot, long from, long to, Pattern pattern,
+            String replacement, Charset charset) {
+        byte[] text = new byte[(int) (to - from)];
+        snapshot.copy(from, text, 0, text.length);
+
+        ByteArrayOutputStream replaced = new ByteArrayOutputStream();
+        int firstChanged = -1;
+        int copiedTo = 0;
+        int count = 0;
+        Matcher matcher = pattern.matcher("");
+        for (int start = 0; start < text.length;) {
+            int end = lineEnd(text, start);
+            int contentEnd = contentEnd(text, start, end);
+            String line = new String(text, start, contentEnd - start, charset);
+            matcher.reset(line);
+            if (matcher.find()) {
+                if (firstChanged < 0) {
+                    firstChanged = start;
+                    copiedTo = start;
+                }
+                StringBuilder changed = new StringBuilder(line.length());
+                do {
+                    matcher.appendReplacement(changed, replacement);
+                    count++;
+                } while (matcher.find());
+                matcher.appendTail(changed);
+                replaced.write(text, copiedTo, start - copiedTo);
+                replaced.writeBytes(changed.toString().getBytes(charset));
+                copiedTo = contentEnd;
+            }
+            start = end;
+        }
+        if (firstChanged < 0) {
+            return null;
+        }
+        return new Replaced(new TextBuffer.Replacement(from + firstChanged, from + copiedTo, replaced.toByteArray()),
+                count);
+    }
+
+    private record Replaced(TextBuffer.Replacement replacement, int matches) {
+    }
+
+    private static int lineEnd(byte[] text, int from) {
+        for (int i = from; i < text.length; i++) {
+            if (text[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return text.length;
+    }
+
+    private static int contentEnd(byte[] text, int start, int end) {
+        if (end > start && text[end - 1] == '\n') {
+            end--;
+        }
+        if (end > start && text[end - 1] == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private static int encodedLength(String line, int chars, Charset charset) {
+        if (charset.newEncoder().maxBytesPerChar() == 1) {
+            return chars;
+        }
+        if (!charset.equals(StandardCharsets.UTF_8)) {
+            return line.substring(0, chars).getBytes(charset).length;
+        }
+        int length = 0;
+        for (int i = 0; i < chars; i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean matchesAt(byte[] text, int at, byte[] pattern, int count) {
+        for (int i = 0; i < count; i++) {
+            if (text[at + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] shifts(byte[] pattern) {
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+        }
+        return shifts;
+    }
+
+    private static <T> T join(Future<T> chunk) {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException cancelled) {
+                throw cancelled;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A search or replace running in the background.
+     */
+    abstract static class Job {
+        private final long length;
+        private final AtomicLong progress = new AtomicLong();
+        CompletableFuture<? extends Job> result;
+        private volatile boolean cancelled;
+        boolean truncated;
+
+        private Job(long length) {
+            this.length = length;
+        }
+
+        boolean isRunning() {
+            return !result.isDone();
+        }
+
+        /**
+         * Whether the job has finished without failing or being cancelled.
+         */
+        boolean isDone() {
+            return result.isDone() && !result.isCompletedExceptionally();
+        }
+
+        /**
+         * Runs {@code action} once the whole snapshot has been processed, on
+         * the thread that finished it, or right away if it already was.
+         */
+        void whenDone(Runnable action) {
+            result.thenRun(action);
+        }
+
+        /**
+         * Blocks until the job has finished.
+         */
+        void await() {
+            result.join();
+        }
+
+        /**
+         * Blocks until the job has finished, but no longer than
+         * {@code timeoutMillis}. Returns whether it has.
+         */
+        boolean await(long timeoutMillis) {
+            try {
+                result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException | TimeoutException e) {
+                // told by isDone
+            }
+            return result.isDone();
+        }
+
+        void cancel() {
+            cancelled = true;
+            result.cancel(false);
+        }
+
+        /**
+         * Returns how much of the snapshot has been processed, in percent.
+         */
+        int percentDone() {
+            return length == 0 ? 100 : (int) (progress.get() * 100 / length);
+        }
+    }
+
+    /**
+     * One query over one snapshot. Once {@link #isDone() done} the matches are
+     * a sorted index of byte offsets, so stepping from any offset to the next
+     * or previous match is a binary search.
+     */
+    static final class Search extends Job {
+        private final String query;
+        private final boolean regex;
+        private long[] offsets = new long[16];
+        private int count;
+
+        private Search(String query, boolean regex, long length) {
+            super(length);
+            this.query = query;
+            this.regex = regex;
+        }
+
+        boolean isFor(String query, boolean regex) {
+            return this.query.equals(query) && this.regex == regex;
+        }
+
+        int count() {
+            return count;
+        }
+
+        /**
+         * Whether the scan stopped at {@link #MAX_MATCHES} before reaching
+         * the end of the snapshot.
+         */
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * Returns the first match after {@code offset}, wrapping around to
+         * the first one, or -1 if there are none.
+         */
+        long next(long offset) {
+            if (count == 0) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(offsets, 0, count, offset);
+            index = index >= 0 ? index + 1 : -index - 1;
+            return offsets[index < count ? index : 0];
+        }
+
+        /**
+         * Returns the last match before {@code offset}, wrapping around to
+         * the last one, or -1 if there are none.
+         */
+        long previous(long offset) {
+            if (count == 0) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(offsets, 0, count, offset);
+            index = (index >= 0 ? index : -index - 1) - 1;
+            return offsets[index >= 0 ? index : count - 1];
+        }
+
+        private boolean add(long[] chunk) {
+            int take = Math.min(chunk.length, MAX_MATCHES - count);
+            if (count + take > offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(count + take, offsets.length * 2));
+            }
+            System.arraycopy(chunk, 0, offsets, count, take);
+            count += take;
+            truncated |= take < chunk.length;
+            return count < MAX_MATCHES;
+        }
+    }
+
+    /**
+     * A replace-all over one snapshot, collecting one replacement per chunk
+     * that has any matches.
+     */
+    static final class Replace extends Job {
+        private final List<TextBuffer.Replacement> replacements = new ArrayList<>();
+        private int count;
+
+        private Replace(long length) {
+            super(length);
+        }
+
+        /**
+         * Returns the number of matches replaced.
+         */
+        int count() {
+            return count;
+        }
+
+        /**
+         * Makes all the replacements to {@code buffer} as one edit. The buffer
+         * must not have changed since the snapshot was taken.
+         */
+        void apply(TextBuffer buffer) {
+            buffer.replace(replacements);
+        }
+
+        private boolean add(Replaced replaced) {
+            if (replaced != null) {
+                replacements.add(replaced.replacement());
+                count += replaced.matches();
+            }
+            return true;
+        }
+    }
+}
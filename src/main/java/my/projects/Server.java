@@ -0,0 +1,244 @@
+package my.projects;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the editor running in a JVM of its own, {@code App --server}, for
+ * {@link Client}s to edit files through over a Unix domain socket. Opening
+ * a file then costs neither starting and warming up a JVM nor, for a file
+ * opened before and not changed since, reading and indexing it again: the
+ * buffers of files that were left saved stay resident.
+ * <p>
+ * The editor paints a single screen, so clients are served one at a time,
+ * in the order they connect. A client sends the file to edit and the size
+ * of its terminal, then messages of its input and of changes to the size;
+ * the server sends back what the editor paints and hangs up once the
+ * session ends.
+ */
+final class Server {
+    static final byte INPUT = 'I';
+    static final byte RESIZE = 'R';
+
+    private Server() {
+    }
+
+    /**
+     * Returns the socket given by {@code editor.socket}, by default one in a
+     * directory of the user's own in {@code XDG_RUNTIME_DIR} or the temporary
+     * directory. Either way the directory must be one only the user can
+     * enter, see {@link #bind}.
+     */
+    static Path socket() {
+        String configured = System.getProperty("editor.socket");
+        if (configured != null) {
+            return Path.of(configured);
+        }
+        String directory = System.getenv("XDG_RUNTIME_DIR");
+        if (directory == null) {
+            directory = System.getProperty("java.io.tmpdir");
+        }
+        return Path.of(directory, "editor-%s".formatted(System.getProperty("user.name")), "editor.sock");
+    }
+
+    /**
+     * Serves clients connecting to {@code socket} until the JVM is stopped.
+     */
+    static void serve(Path socket) throws IOException {
+        try (ServerSocketChannel server = bind(socket)) {
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    serve(client);
+                } catch (EOFException e) {
+                    // hung up before a session began, as bind's probe does
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private static void serve(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        Path file = Path.of(in.readUTF());
+        RemoteTerminal terminal = new RemoteTerminal(in, new WindowSize(in.readInt(), in.readInt()));
+        terminal.start();
+        TextEditor.initEditor(terminal, client);
+        try {
+            TextEditor.edit(file);
+        } finally {
+            TextEditor.close();
+        }
+    }
+
+    /**
+     * Binds {@code socket} for the user only, taking over a socket file left
+     * behind by a server that is gone. Whoever can reach the socket can edit
+     * files as the user, and a socket is reachable from the moment it is
+     * bound, so it goes in a directory that is private from the start:
+     * created without access for anyone else, or refused if it already
+     * exists with some.
+     */
+    private static ServerSocketChannel bind(Path socket) throws IOException {
+        privateDirectory(socket.toAbsolutePath().getParent());
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        if (Files.exists(socket)) {
+            boolean listening;
+            try {
+                SocketChannel.open(address).close();
+                listening = true;
+            } catch (IOException e) {
+                listening = false;
+            }
+            if (listening) {
+                throw new IOException("A server is already listening on %s".formatted(socket));
+            }
+            Files.delete(socket);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(address);
+        return server;
+    }
+
+    private static void privateDirectory(Path directory) throws IOException {
+        if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Set<PosixFilePermission> owner = PosixFilePermissions.fromString("rwx------");
+            if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+                Files.createDirectories(directory.getParent());
+                Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(owner));
+            }
+            PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+            if (!attributes.isDirectory() || !attributes.owner().equals(user)
+                    || !owner.containsAll(attributes.permissions())) {
+                throw new IOException("%s must be a directory only %s can access, chmod 700 it"
+                        .formatted(directory, user.getName()));
+            }
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * The terminal of a client: input and sizes arrive as messages, read on a
+     * thread of their own so the size is current whenever the editor asks.
+     */
+    private static final class RemoteTerminal implements Terminal, Runnable {
+        private static final byte[] END_OF_INPUT = new byte[0];
+
+        private final DataInputStream in;
+        private final LinkedBlockingQueue<byte[]> input = new LinkedBlockingQueue<>();
+        private volatile WindowSize size;
+        private byte[] chunk;
+        private int chunkPosition;
+
+        RemoteTerminal(DataInputStream in, WindowSize size) {
+            this.in = in;
+            this.size = size;
+        }
+
+        void start() {
+            Thread thread = new Thread(this, "editor-client");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == INPUT) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        input.add(bytes);
+                    } else if (type == RESIZE) {
+                        size = new WindowSize(in.readInt(), in.readInt());
+                    } else {
+                        throw new IOException("Unknown message %d from client".formatted(type));
+                    }
+                }
+            } catch (EOFException | AsynchronousCloseException e) {
+                // the client hung up, or the session ended
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                input.add(END_OF_INPUT);
+            }
+        }
+
+        @Override
+        public void enableRawMode() {
+            // the client's terminal is in raw mode
+        }
+
+        @Override
+        public void disableRawMode() {
+        }
+
+        @Override
+        public WindowSize getWindowSize() {
+            return size;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (chunk == null) {
+                try {
+                    chunk = input.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EOFException();
+                }
+                chunkPosition = 0;
+            }
+            if (chunk == END_OF_INPUT) {
+                // stays at the end for every read after
+                throw new EOFException();
+            }
+            int count = Math.min(length, chunk.length - chunkPosition);
+            System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+            chunkPosition += count;
+            if (chunkPosition == chunk.length) {
+                chunk = null;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean waitForInput(long timeoutMillis) throws IOException {
+            if (chunk != null) {
+                return true;
+            }
+            try {
+                chunk = input.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            chunkPosition = 0;
+            return chunk != null;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package my.projects;
+
+import static my.projects.Highlighter.COMMENT;
+import static my.projects.Highlighter.DEBUG;
+import static my.projects.Highlighter.ERROR;
+import static my.projects.Highlighter.INFO;
+import static my.projects.Highlighter.KEY;
+import static my.projects.Highlighter.KEYWORD;
+import static my.projects.Highlighter.NUMBER;
+import static my.projects.Highlighter.STRING;
+import static my.projects.Highlighter.TIME;
+import static my.projects.Highlighter.TYPE;
+import static my.projects.Highlighter.WARNING;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Line lexers for the languages the {@link Highlighter} knows. A lexer gets
+ * one line and the state the previous line ended in, adds the styled runs of
+ * the line to the spans and returns the state the line ends in, 0 being the
+ * state a file starts in.
+ */
+enum Syntax {
+    JAVA {
+        private static final int BLOCK_COMMENT = 1;
+        private static final int TEXT_BLOCK = 2;
+        private static final Words KEYWORDS = new Words("abstract", "assert", "boolean", "break", "byte",
+                "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum",
+                "extends", "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof",
+                "int", "interface", "long", "native", "new", "package", "private", "protected", "public",
+                "record", "return", "sealed", "short", "static", "strictfp", "super", "switch", "synchronized",
+                "this", "throw", "throws", "transient", "try", "var", "void", "volatile", "while", "yield",
+                "true", "false", "null");
+
+        @Override
+        int lex(CharSequence line, int state, Highlighter.Spans spans) {
+            int n = line.length();
+            int i = 0;
+            if (state == BLOCK_COMMENT || state == TEXT_BLOCK) {
+                String close = state == BLOCK_COMMENT ? "*/" : "\"\"\"";
+                int end = indexOf(line, close, 0);
+                byte style = state == BLOCK_COMMENT ? COMMENT : STRING;
+                if (end < 0) {
+                    spans.add(0, n, style);
+                    return state;
+                }
+                i = end + close.length();
+                spans.add(0, i, style);
+            }
+            while (i < n) {
+                char c = line.charAt(i);
+                if (startsWith(line, "//", i)) {
+                    spans.add(i, n, COMMENT);
+                    return 0;
+                } else if (startsWith(line, "/*", i)) {
+                    int end = indexOf(line, "*/", i + 2);
+                    if (end < 0) {
+                        spans.add(i, n, COMMENT);
+                        return BLOCK_COMMENT;
+                    }
+                    spans.add(i, end + 2, COMMENT);
+                    i = end + 2;
+                } else if (startsWith(line, "\"\"\"", i)) {
+                    int end = indexOf(line, "\"\"\"", i + 3);
+                    if (end < 0) {
+                        spans.add(i, n, STRING);
+                        return TEXT_BLOCK;
+                    }
+                    spans.add(i, end + 3, STRING);
+                    i = end + 3;
+                } else if (c == '"' || c == '\'') {
+                    int end = quoted(line, i);
+                    spans.add(i, end, STRING);
+                    i = end;
+                } else if (Character.isDigit(c)) {
+                    int end = word(line, i);
+                    spans.add(i, end, NUMBER);
+                    i = end;
+                } else if (c == '@' || Character.isJavaIdentifierStart(c)) {
+                    int end = identifier(line, i + 1);
+                    if (c == '@' || Character.isUpperCase(c)) {
+                        spans.add(i, end, TYPE);
+                    } else if (KEYWORDS.contains(line, i, end)) {
+                        spans.add(i, end, KEYWORD);
+                    }
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+            return 0;
+        }
+    },
+
+    JSON {
+        @Override
+        int lex(CharSequence line, int state, Highlighter.Spans spans) {
+            int n = line.length();
+            int i = 0;
+            while (i < n) {
+                char c = line.charAt(i);
+                if (c == '"') {
+                    int end = quoted(line, i);
+                    int next = end;
+                    while (next < n && Character.isWhitespace(line.charAt(next))) {
+                        next++;
+                    }
+                    spans.add(i, end, next < n && line.charAt(next) == ':' ? KEY : STRING);
+                    i = end;
+                } else if (c == '-' || Character.isDigit(c)) {
+                    int end = word(line, i + 1);
+                    spans.add(i, end, NUMBER);
+                    i = end;
+                } else if (Character.isLetter(c)) {
+                    int end = identifier(line, i + 1);
+                    spans.add(i, end, KEYWORD);
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+            return 0;
+        }
+    },
+
+    /**
+     * The state inside a block scalar ({@code key: |}) is the indentation of
+     * its key plus one: lines indented deeper belong to the scalar.
+     */
+    YAML {
+        private static final Words CONSTANTS = new Words("true", "false", "yes", "no", "on", "off", "null",
+                "~", "True", "False", "TRUE", "FALSE", "Null", "NULL");
+
+        @Override
+        int lex(CharSequence line, int state, Highlighter.Spans spans) {
+            int n = line.length();
+            int indent = 0;
+            while (indent < n && line.charAt(indent) == ' ') {
+                indent++;
+            }
+            if (state > 0) {
+                if (indent == n) {
+                    return state;
+                }
+                if (indent >= state) {
+                    spans.add(indent, n, STRING);
+                    return state;
+                }
+            }
+            if (indent == n) {
+                return 0;
+            }
+            if (line.charAt(indent) == '#') {
+                spans.add(indent, n, COMMENT);
+                return 0;
+            }
+            if (startsWith(line, "---", 0) || startsWith(line, "...", 0)) {
+                spans.add(0, 3, KEYWORD);
+                return 0;
+            }
+
+            int i = indent;
+            while (startsWith(line, "- ", i)) {
+                spans.add(i, i + 1, KEYWORD);
+                i += 2;
+                while (i < n && line.charAt(i) == ' ') {
+                    i++;
+                }
+            }
+            int keyStart = i;
+            int comment = n;
+            for (int j = i; j < n; j++) {
+                char c = line.charAt(j);
+                if (c == '"' || c == '\'') {
+                    j = quoted(line, j) - 1;
+                } else if (c == '#' && j > 0 && line.charAt(j - 1) == ' ') {
+                    comment = j;
+                    break;
+                } else if (c == ':' && i == keyStart && (j + 1 == n || line.charAt(j + 1) == ' ')) {
+                    spans.add(keyStart, j, KEY);
+                    i = j + 1;
+                }
+            }
+
+            int value = i;
+            while (value < comment && line.charAt(value) == ' ') {
+                value++;
+            }
+            int end = comment;
+            while (end > value && line.charAt(end - 1) == ' ') {
+                end--;
+            }
+            int next = 0;
+            if (value < end) {
+                char c = line.charAt(value);
+                if ((c == '|' || c == '>') && only(line, value, end, "|>+-0123456789")) {
+                    spans.add(value, end, KEYWORD);
+                    next = keyStart + 1;
+                } else if (c == '"' || c == '\'') {
+                    spans.add(value, end, STRING);
+                } else if (CONSTANTS.contains(line, value, end)) {
+                    spans.add(value, end, KEYWORD);
+                } else if (isNumber(line, value, end)) {
+                    spans.add(value, end, NUMBER);
+                } else if (c == '&' || c == '*' || c == '!') {
+                    spans.add(value, identifier(line, value + 1), TYPE);
+                }
+            }
+            if (comment < n) {
+                spans.add(comment, n, COMMENT);
+            }
+            return next;
+        }
+
+        /**
+         * Returns whether {@code [from, to)} is a decimal number, with a sign,
+         * a fraction and an exponent or not.
+         */
+        private static boolean isNumber(CharSequence line, int from, int to) {
+            int i = from;
+            if (i < to && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+                i++;
+            }
+            int digits = 0;
+            for (; i < to && digit(line.charAt(i)); i++) {
+                digits++;
+            }
+            if (i < to && line.charAt(i) == '.') {
+                for (i++; i < to && digit(line.charAt(i)); i++) {
+                    digits++;
+                }
+            }
+            if (digits == 0) {
+                return false;
+            }
+            if (i < to && (line.charAt(i) == 'e' || line.charAt(i) == 'E')) {
+                i++;
+                if (i < to && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+                    i++;
+                }
+                int exponent = i;
+                while (i < to && digit(line.charAt(i))) {
+                    i++;
+                }
+                if (i == exponent) {
+                    return false;
+                }
+            }
+            return i == to;
+        }
+
+        private static boolean digit(char c) {
+            return c >= '0' && c <= '9';
+        }
+    },
+
+    /**
+     * Log files: a leading timestamp and the level of every line.
+     */
+    LOG {
+        private static final Words ERRORS = new Words("ERROR", "FATAL", "SEVERE", "CRITICAL");
+        private static final Words WARNINGS = new Words("WARN", "WARNING");
+        private static final Words INFOS = new Words("INFO", "NOTICE");
+        private static final Words DEBUGS = new Words("DEBUG", "TRACE", "FINE", "FINER", "FINEST");
+
+        @Override
+        int lex(CharSequence line, int state, Highlighter.Spans spans) {
+            int n = line.length();
+            int i = 0;
+            boolean timestamp = false;
+            while (i < n && (Character.isDigit(line.charAt(i)) || "-:.,/TZ+ ".indexOf(line.charAt(i)) >= 0)) {
+                timestamp |= line.charAt(i) == ':' || line.charAt(i) == '-';
+                i++;
+            }
+            while (i > 0 && line.charAt(i - 1) == ' ') {
+                i--;
+            }
+            if (timestamp && Character.isDigit(line.charAt(0))) {
+                spans.add(0, i, TIME);
+            } else {
+                i = 0;
+            }
+
+            while (i < n) {
+                if (!Character.isUpperCase(line.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int end = identifier(line, i);
+                byte style = ERRORS.contains(line, i, end) ? ERROR
+                        : WARNINGS.contains(line, i, end) ? WARNING
+                        : INFOS.contains(line, i, end) ? INFO
+                        : DEBUGS.contains(line, i, end) ? DEBUG
+                        : 0;
+                if (style != 0 && (i == 0 || !Character.isLetterOrDigit(line.charAt(i - 1)))) {
+                    spans.add(i, end, style);
+                    return 0;
+                }
+                i = end;
+            }
+            return 0;
+        }
+    };
+
+    abstract int lex(CharSequence line, int state, Highlighter.Spans spans);
+
+    /**
+     * Returns the syntax for {@code path} by its extension, or the one named
+     * by {@code editor.syntax}, or null if there is none.
+     */
+    static Syntax forFile(Path path) {
+        String configured = System.getProperty("editor.syntax");
+        if (configured != null) {
+            return configured.equalsIgnoreCase("none") ? null : valueOf(configured.toUpperCase(Locale.ROOT));
+        }
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) {
+            // a compressed file is edited decompressed
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        if (name.endsWith(".java")) {
+            return JAVA;
+        } else if (name.endsWith(".json")) {
+            return JSON;
+        } else if (name.endsWith(".yaml") || name.endsWith(".yml")) {
+            return YAML;
+        } else if (name.endsWith(".log")) {
+            return LOG;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the end of the quoted string starting at {@code start}, or of
+     * the line if it is not closed.
+     */
+    private static int quoted(CharSequence line, int start) {
+        char quote = line.charAt(start);
+        for (int i = start + 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return line.length();
+    }
+
+    private static int identifier(CharSequence line, int start) {
+        int i = start;
+        while (i < line.length() && Character.isJavaIdentifierPart(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the end of the number or word starting at {@code start}.
+     */
+    private static int word(CharSequence line, int start) {
+        int i = start;
+        while (i < line.length() && (Character.isLetterOrDigit(line.charAt(i)) || line.charAt(i) == '_'
+                || line.charAt(i) == '.')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns whether {@code text} is at {@code start} of {@code line}.
+     */
+    private static boolean startsWith(CharSequence line, String text, int start) {
+        if (start + text.length() > line.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns where {@code text} is next in {@code line} from {@code start}
+     * on, or -1 if it is not.
+     */
+    private static int indexOf(CharSequence line, String text, int start) {
+        for (int i = start; i + text.length() <= line.length(); i++) {
+            if (startsWith(line, text, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether every char of {@code [from, to)} is one of
+     * {@code chars}.
+     */
+    private static boolean only(CharSequence line, int from, int to, String chars) {
+        for (int i = from; i < to; i++) {
+            if (chars.indexOf(line.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A set of words a part of a line is looked up in without copying the
+     * part out, the words being kept by their length.
+     */
+    private static final class Words {
+        private final String[][] byLength;
+
+        Words(String... words) {
+            int longest = 0;
+            for (String word : words) {
+                longest = Math.max(longest, word.length());
+            }
+            byLength = new String[longest + 1][0];
+            for (String word : words) {
+                String[] same = byLength[word.length()];
+                same = Arrays.copyOf(same, same.length + 1);
+                same[same.length - 1] = word;
+                byLength[word.length()] = same;
+            }
+        }
+
+        boolean contains(CharSequence line, int from, int to) {
+            if (to - from >= byLength.length) {
+                return false;
+            }
+            for (String word : byLength[to - from]) {
+                if (startsWith(line, word, from)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,11 +1,43 @@
 package my.projects;
 
+import java.io.IOException;
+
+import com.sun.jna.Platform;
+
 public interface Terminal {
+    /**
+     * Returns the console of the platform the editor runs on. The termios
+     * layout LinuxTerminal relies on is Linux's own, so other Unix systems are
+     * refused rather than handed a terminal that garbles their settings.
+     */
+    static Terminal system() {
+        if (Platform.isWindows()) {
+            return WindowsTerminal.getInstance();
+        }
+        if (Platform.isLinux()) {
+            return LinuxTerminal.getInstance();
+        }
+        throw new UnsupportedOperationException(
+                "Terminals on %s are not supported, only Linux and Windows".formatted(System.getProperty("os.name")));
+    }
+
     void enableRawMode();
 
     void disableRawMode();
 
     WindowSize getWindowSize();
+
+    /**
+     * Reads whatever input is available, blocking until there is at least one
+     * byte, and returns the number of bytes read.
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Waits up to {@code timeoutMillis} for input and returns whether there is
+     * some to read.
+     */
+    boolean waitForInput(long timeoutMillis) throws IOException;
 }
 
 record WindowSize(int rows, int columns) {
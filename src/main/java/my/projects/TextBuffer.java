@@ -0,0 +1,143 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Line/column view of the text being edited. Rows are zero based and
+ * columns count UTF-16 chars, the same units the cursor uses. Columns past
+ * the end of a row are clamped to it.
+ */
+public interface TextBuffer {
+    int lineCount();
+
+    /**
+     * Takes in the file until it has {@code rows} rows or has been taken in
+     * whole, and returns the {@link #lineCount()} then. Rows further down
+     * than the ones shown so far are only counted once asked for.
+     */
+    int loadRows(int rows);
+
+    int lineLength(int row);
+
+    String line(int row);
+
+    String line(int row, int fromColumn, int toColumn);
+
+    /**
+     * Decodes columns {@code [fromColumn, toColumn)} of {@code row} into
+     * {@code chars}, or into a new buffer if they do not fit, and returns it
+     * flipped for reading. Lets rows be painted without a {@link String}.
+     */
+    CharBuffer line(int row, int fromColumn, int toColumn, CharBuffer chars);
+
+    /**
+     * Appends columns {@code [fromColumn, toColumn)} of {@code row} to
+     * {@code out} as UTF-8 without going through a {@link String}.
+     */
+    void writeLine(int row, int fromColumn, int toColumn, OutputBuffer out);
+
+    void insert(int row, int column, CharSequence text);
+
+    void delete(int row, int column, int count);
+
+    void insertLine(int row, CharSequence text);
+
+    void deleteLine(int row);
+
+    void splitLine(int row, int column);
+
+    void joinLine(int row);
+
+    /**
+     * Replaces each {@link Replacement}'s byte range of the document with its
+     * bytes as a single edit. The ranges are offsets into the current version,
+     * sorted and not overlapping.
+     */
+    void replace(List<Replacement> replacements);
+
+    /**
+     * Appends complete lines the file has grown by to the end of the
+     * document. They are more of the file rather than an edit: they are not
+     * undone and the change listener is not told about them.
+     */
+    void appendLines(byte[] lines);
+
+    /**
+     * Returns how many bytes of the file the document holds, the offset
+     * further lines appended to the file start at.
+     */
+    long fileLength();
+
+    /**
+     * Reverts the most recent edit not undone yet and returns the document
+     * offset of the first change, or -1 if there is nothing to undo. A run of
+     * typed characters, a paste or a replace-all is undone as a whole.
+     */
+    long undo();
+
+    /**
+     * Makes the most recently undone edit again and returns the document
+     * offset of the first change, or -1 if there is nothing to redo.
+     */
+    long redo();
+
+    void writeTo(WritableByteChannel channel) throws IOException;
+
+    /**
+     * Returns whether the file is read through a memory mapping, which sees
+     * any change made to the file in place.
+     */
+    boolean isMapped();
+
+    Charset charset();
+
+    /**
+     * Counts the edits made so far, anything derived from an older version is
+     * stale.
+     */
+    long version();
+
+    /**
+     * Captures the current bytes so they can be read from another thread.
+     */
+    TextSnapshot snapshot();
+
+    /**
+     * Returns the row holding byte {@code offset} of the document, or
+     * {@link #lineCount()} for the offset just past its end.
+     */
+    int rowAtOffset(long offset);
+
+    /**
+     * Returns the column byte {@code offset} of the document falls on in
+     * {@code row}.
+     */
+    int columnAtOffset(int row, long offset);
+
+    /**
+     * Returns the byte offset of {@code column} of {@code row} in the
+     * document.
+     */
+    long offsetAt(int row, int column);
+
+    /**
+     * Has {@code listener} told about every change made to the bytes of the
+     * document from now on, undo and redo included, or nobody if it is null.
+     */
+    void setChangeListener(ChangeListener listener);
+
+    record Replacement(long from, long to, byte[] bytes) {
+    }
+
+    /**
+     * Receives the changes to a document in the order they are made: applying
+     * them to the bytes it started out with gives its current bytes.
+     */
+    interface ChangeListener {
+        void changed(long offset, long removed, byte[] inserted);
+    }
+}
@@ -1,25 +1,49 @@
 package my.projects;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.regex.PatternSyntaxException;
 
 public class TextEditor {
 
-    private static WindowsTerminal wTerminal;
+    private static Terminal terminal;
+    private static InputBuffer input;
     private static int cursorX;
     private static int cursorY;
     private static int offsetX;
     private static int offsetY;
+    // screen rows of row offsetY above the top of the screen when rows are wrapped
+    private static int offsetYWrapped;
     private static int rows;
     private static int columns;
-    private static List<String> content;
+    private static TextBuffer content;
     private static String statusMessage;
+    private static Screen screen;
+    private static WritableByteChannel out;
+    private static final OutputBuffer frame = new OutputBuffer(64 * 1024);
+    // held by the input thread whenever it is not waiting for input
+    private static final ReentrantLock editorLock = new ReentrantLock();
+    private static RenderScheduler scheduler;
+    private static boolean running;
+    private static final OutputBuffer pasteBuffer = new OutputBuffer(4096);
+    private static final byte[] PASTE_END = { '\033', '[', '2', '0', '1', '~' };
+    private static String pastedText;
+    private static final Metrics metrics = new Metrics(metricsFile(), Long.getLong("editor.metrics.interval", 1000));
+    private static boolean showMetrics = Boolean.getBoolean("editor.metrics.overlay");
 
     private final static int ARROW_UP = 1000;
     private final static int ARROW_DOWN = 1001;
@@ -30,33 +54,223 @@ public class TextEditor {
     private final static int PAGE_UP = 1006;
     private final static int PAGE_DOWN = 1007;
     private final static int DEL = 1008;
+    private final static int PASTE = 1009;
+    private final static int FOCUS_IN = 1010;
+    private final static int FOCUS_OUT = 1011;
     private final static int BACKSPACE = 127;
 
-    private static void editorSave() {
+    // how long to wait for the rest of an escape sequence before taking ESC as a key
+    private final static long ESCAPE_TIMEOUT_MILLIS = 50;
+    private final static int FRAMES_PER_SECOND = Integer.getInteger("editor.fps", 60);
+
+    // files at least this big are memory mapped instead of read onto the heap
+    private final static long MAP_THRESHOLD = 32 * 1024 * 1024;
+    // how much of a compressed file is decompressed up front to tell its charset
+    private final static int SAMPLE_SIZE = 1024 * 1024;
+    // how often the status bar shows the progress of a long running job
+    private final static long PROGRESS_INTERVAL_MILLIS = 100;
+    private final static boolean JOURNAL = Boolean.parseBoolean(System.getProperty("editor.journal", "true"));
+    // how long edits may sit in memory before the swap file journal forces them to disk
+    private final static long JOURNAL_INTERVAL_MILLIS = Long.getLong("editor.journal.interval", 200);
+    // -Deditor.follow=true follows the file from the start, otherwise Ctrl-L does
+    private final static boolean FOLLOW = Boolean.getBoolean("editor.follow");
+    private final static long FOLLOW_INTERVAL_MILLIS = Long.getLong("editor.follow.interval", 250);
+
+    /**
+     * Starts saving the buffer as it is now in the background, the status
+     * bar showing how far along it is.
+     */
+    static void editorSave() {
         if (currentFile == null) {
             return;
         }
+        if (save != null && save.isRunning()) {
+            setStatusMessage("Still saving the file");
+            return;
+        }
+        if (gunzip != null) {
+            setStatusMessage("Still decompressing the file");
+            return;
+        }
+        // a followed file changes on disk as it should
+        if (!overwrite && follow == null && fingerprint != null && !fingerprint.matches(currentFile)) {
+            overwrite = true;
+            setStatusMessage("%s changed on disk, Ctrl-E merges it in, Ctrl-S overwrites it"
+                    .formatted(currentFile.getFileName()));
+            return;
+        }
+        overwrite = false;
+
+        if (journal != null) {
+            journal.saveStarted();
+        }
+        clearStatusMessage();
+        savingVersion = content.version();
+        savingSnapshot = content.snapshot();
+        save = Save.start(savingSnapshot, currentFile, compressed, content.isMapped(), PROGRESS_INTERVAL_MILLIS,
+                TextEditor::requestFrame, TextEditor::saved);
+    }
 
+    /**
+     * Brings the buffer up to date with the file after another program has
+     * changed it. Only the bytes that differ are read into the buffer, as a
+     * single edit that undo takes back, and the cursor stays where it is.
+     */
+    private static void reload() {
+        if (currentFile == null || fingerprint == null) {
+            return;
+        }
+        if ((save != null && save.isRunning()) || gunzip != null) {
+            setStatusMessage("Still %s the file".formatted(gunzip != null ? "decompressing" : "saving"));
+            return;
+        }
+        overwrite = false;
+        if (compressed) {
+            // nothing to merge byte for byte, the buffer holds it decompressed
+            int row = cursorY;
+            int column = cursorX;
+            int top = offsetY;
+            try {
+                openFile(currentFile);
+                // the cursor goes back once the rows it was on are decompressed again
+                restoreRow = row;
+                restoreColumn = column;
+                restoreOffsetY = top;
+            } catch (IOException e) {
+                setStatusMessage("Could not reload %s: %s".formatted(currentFile.getFileName(), e.getMessage()));
+            }
+            return;
+        }
+        List<TextBuffer.Replacement> changes;
         try {
-            Files.write(currentFile, content);
-            setStatusMessage("Successfully saved file");
+            changes = fingerprint.changes(currentFile, content.snapshot(), content.version() == savedVersion);
         } catch (IOException e) {
-            e.printStackTrace();
-            setStatusMessage("There was an error saving your file %s".formatted(e.getMessage()));
+            setStatusMessage("Could not reload %s: %s".formatted(currentFile.getFileName(), e.getMessage()));
+            return;
         }
+        long changed = 0;
+        if (!changes.isEmpty()) {
+            content.replace(changes);
+            for (TextBuffer.Replacement change : changes) {
+                changed += change.bytes().length;
+            }
+            editedFrom(content.rowAtOffset(changes.get(0).from()));
+            redraw();
+        }
+        if (journal != null) {
+            // the swap file starts over from the file as it is now
+            journal.saveStarted();
+            journal.saved();
+        }
+        matchesFile(content.version(), content.snapshot());
+        int rows = content.loadRows(cursorY + 1);
+        cursorY = Math.max(0, Math.min(cursorY, rows - 1));
+        cursorX = Math.min(cursorX, currentLineLength());
+        setStatusMessage("Merged in %s from disk, %d bytes replaced".formatted(currentFile.getFileName(), changed));
     }
 
-    private static void insertChar(int c) {
-        if (cursorY == content.size()) {
+    /**
+     * Merges the file in if another program changed it while the buffer has
+     * no changes of its own, or says so if it has.
+     */
+    private static void checkFile() {
+        if (currentFile == null || fingerprint == null || follow != null || gunzip != null
+                || fingerprint.matches(currentFile)) {
+            return;
+        }
+        if (content.version() == savedVersion) {
+            reload();
+        } else {
+            setStatusMessage("%s changed on disk, Ctrl-E merges it in (Ctrl-Z takes that back)"
+                    .formatted(currentFile.getFileName()));
+        }
+    }
+
+    private static void saved(Save done) {
+        editorLock.lock();
+        try {
+            IOException e = done.failure();
+            if (e == null) {
+                if (journal != null) {
+                    journal.saved();
+                }
+                matchesFile(savingVersion, savingSnapshot);
+                setStatusMessage("Successfully saved file");
+            } else {
+                if (journal != null) {
+                    journal.saveFailed();
+                }
+                e.printStackTrace();
+                setStatusMessage("There was an error saving your file %s".formatted(e.getMessage()));
+            }
+            scheduler.requestFrame();
+        } finally {
+            editorLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a save still being written, letting go of the editor lock
+     * meanwhile if this thread holds it.
+     */
+    static void awaitSave() {
+        if (save == null) {
+            return;
+        }
+        int holds = editorLock.getHoldCount();
+        for (int i = 0; i < holds; i++) {
+            editorLock.unlock();
+        }
+        try {
+            save.await();
+        } finally {
+            for (int i = 0; i < holds; i++) {
+                editorLock.lock();
+            }
+        }
+    }
+
+    static void insertChar(int c) {
+        if (cursorY == content.lineCount()) {
             // append row
-            insertRowAt(content.size(), "");
+            insertRowAt(content.lineCount(), "");
         }
         insertCharIntoRow(cursorY, cursorX, c);
         cursorX++;
     }
 
-    private static void deleteChar() {
-        if (cursorY == content.size()) {
+    /**
+     * Inserts a whole block of text, e.g. a paste, as a single edit.
+     */
+    private static void insertText(String text) {
+        String normalized = text.replace("\r\n", "\n").replace('\r', '\n');
+        if (normalized.isEmpty()) {
+            return;
+        }
+        if (cursorY == content.lineCount()) {
+            insertRowAt(content.lineCount(), "");
+        }
+        content.insert(cursorY, cursorX, normalized);
+        int lastBreak = normalized.lastIndexOf('\n');
+        if (lastBreak < 0) {
+            edited(cursorY, 1, 1);
+            screen.markRow(cursorY);
+            cursorX += normalized.length();
+            return;
+        }
+        screen.markRowsFrom(cursorY);
+        int first = cursorY;
+        for (int i = 0; i <= lastBreak; i++) {
+            if (normalized.charAt(i) == '\n') {
+                cursorY++;
+            }
+        }
+        edited(first, 1, 1 + cursorY - first);
+        cursorX = normalized.length() - lastBreak - 1;
+    }
+
+    static void deleteChar() {
+        if (cursorY == content.lineCount()) {
             return;
         }
 
@@ -64,138 +278,679 @@ public class TextEditor {
             return;
         }
         if (cursorX > 0) {
-            deleteCharFromRow(cursorY, cursorX - 1);
-            cursorX--;
+            int previous = layout.previous(cursorY, cursorX);
+            deleteCharFromRow(cursorY, previous, cursorX - previous);
+            cursorX = previous;
         } else {
-            cursorX = content.get(cursorY - 1).length();
-            appendStringToRow(cursorY - 1, content.get(cursorY));
-            deleteRow(cursorY);
+            cursorX = content.lineLength(cursorY - 1);
+            appendRowToPrevious(cursorY);
             cursorY--;
         }
     }
 
-    private static void deleteRow(int at) {
-        if (at < 0 || at >= content.size())
+    private static void appendRowToPrevious(int at) {
+        if (at <= 0 || at >= content.lineCount())
             return;
-        content.remove(at);
-    }
-
-    private static void appendStringToRow(int at, String append) {
-        content.set(at, content.get(at) + append);
+        content.joinLine(at - 1);
+        edited(at - 1, 2, 1);
+        screen.markRowsFrom(at - 1);
     }
 
     private static void insertRowAt(int at, String rowContent) {
-        if (at < 0 || at > content.size())
+        if (at < 0 || at > content.lineCount())
             return;
 
-        content.add(at, rowContent);
+        content.insertLine(at, rowContent);
+        edited(at, 0, 1);
+        screen.markRowsFrom(at);
     }
 
-    private static void insertNewLine() {
-        if (cursorX == 0) {
+    static void insertNewLine() {
+        if (cursorY == content.lineCount()) {
             insertRowAt(cursorY, "");
         } else {
-            insertRowAt(cursorY + 1, content.get(cursorY).substring(cursorX));
-            content.set(cursorY, content.get(cursorY).substring(0, cursorX));
+            content.splitLine(cursorY, cursorX);
+            edited(cursorY, 1, 2);
+            screen.markRowsFrom(cursorY);
         }
         cursorY++;
         cursorX = 0;
     }
 
     private static void insertCharIntoRow(int row, int at, int c) {
-        if (at < 0 || at > content.get(row).length())
-            at = content.get(row).length();
-        String editedLine = new StringBuilder(content.get(row)).insert(at, (char) c).toString();
-        content.set(row, editedLine);
+        // the buffer clamps columns past the end of the row
+        if (at < 0)
+            at = Integer.MAX_VALUE;
+        content.insert(row, at, String.valueOf((char) c));
+        edited(row, 1, 1);
+        screen.markRow(row);
     }
 
-    private static void deleteCharFromRow(int row, int at) {
-        if (at < 0 || at > content.get(row).length())
+    private static void deleteCharFromRow(int row, int at, int count) {
+        if (at < 0)
             return;
-        String editedLine = new StringBuilder(content.get(row)).deleteCharAt(at).toString();
-        content.set(row, editedLine);
+        content.delete(row, at, count);
+        edited(row, 1, 1);
+        screen.markRow(row);
+    }
+
+    /**
+     * Tells the layout, the wrap index and the highlighter rows
+     * {@code [row, row + oldRows)} are now {@code newRows} rows.
+     */
+    private static void edited(int row, int oldRows, int newRows) {
+        layout.edited(row, oldRows, newRows);
+        if (wrap != null) {
+            wrap.edited(row, oldRows, newRows);
+        }
+        if (highlighter != null) {
+            highlighter.edited(row, oldRows, newRows);
+        }
+    }
+
+    /**
+     * Tells the layout, the wrap index and the highlighter anything from
+     * {@code row} on may have changed.
+     */
+    private static void editedFrom(int row) {
+        layout.invalidateFrom(row);
+        if (wrap != null) {
+            wrap.invalidateFrom(row);
+        }
+        if (highlighter != null) {
+            highlighter.invalidateFrom(row);
+        }
     }
 
     private static void scroll() {
+        if (wrap != null) {
+            scrollWrapped();
+            return;
+        }
         if (cursorY >= rows + offsetY) {
             offsetY = cursorY - rows + 1;
         } else if (cursorY < offsetY) {
             offsetY = cursorY;
         }
 
-        if (cursorX >= columns + offsetX) {
-            offsetX = cursorX - columns + 1;
-        } else if (cursorX < offsetX) {
-            offsetX = cursorX;
+        int screenX = layout.screenColumn(cursorY, cursorX);
+        if (screenX >= columns + offsetX) {
+            offsetX = screenX - columns + 1;
+        } else if (screenX < offsetX) {
+            offsetX = screenX;
+        }
+    }
+
+    /**
+     * Starts or stops following lines appended to the file.
+     */
+    private static void toggleFollow() {
+        if (follow != null) {
+            follow.stop();
+            follow = null;
+            setStatusMessage("Stopped following %s".formatted(currentFile.getFileName()));
+        } else if (compressed) {
+            setStatusMessage("Cannot follow a compressed file");
+        } else if (currentFile != null) {
+            follow = Follow.start(currentFile, content.fileLength(), FOLLOW_INTERVAL_MILLIS, TextEditor::followed,
+                    TextEditor::stoppedFollowing);
+            setStatusMessage("Following %s (Ctrl-L to stop)".formatted(currentFile.getFileName()));
+        }
+    }
+
+    /**
+     * Appends lines the file has grown by, keeping the cursor on the last row
+     * if it was there so the screen stays at the end of the file.
+     */
+    private static void followed(byte[] lines) {
+        editorLock.lock();
+        try {
+            if (follow == null) {
+                return;
+            }
+            int before = content.loadRows(Integer.MAX_VALUE);
+            boolean atEnd = cursorY >= before - 1;
+            content.appendLines(lines);
+            int after = content.lineCount();
+            // the last row may have been missing its line feed and gone on
+            editedFrom(Math.max(0, before - 1));
+            screen.markRowsFrom(Math.max(0, before - 1));
+            if (atEnd) {
+                cursorY += after - before;
+                cursorX = 0;
+            }
+            scheduler.requestFrame();
+        } finally {
+            editorLock.unlock();
+        }
+    }
+
+    /**
+     * Appends lines decompressed from the file, the cursor staying where it
+     * is.
+     */
+    private static void decompressed(byte[] lines) {
+        editorLock.lock();
+        try {
+            if (gunzip == null) {
+                return;
+            }
+            int before = content.loadRows(Integer.MAX_VALUE);
+            boolean matched = content.version() == savedVersion;
+            content.appendLines(lines);
+            if (matched) {
+                // still what the file holds, once decompressed
+                savedVersion = content.version();
+            }
+            editedFrom(Math.max(0, before - 1));
+            screen.markRowsFrom(Math.max(0, before - 1));
+            if (restoreRow >= 0 && restoreRow < content.lineCount()) {
+                restoreCursor();
+            }
+            scheduler.requestFrame();
+        } finally {
+            editorLock.unlock();
+        }
+    }
+
+    private static void decompressedAll(Gunzip done) {
+        editorLock.lock();
+        try {
+            if (gunzip != done) {
+                return;
+            }
+            gunzip = null;
+            if (restoreRow >= 0) {
+                // the file got shorter than where the cursor was
+                restoreRow = Math.max(0, content.lineCount() - 1);
+                restoreCursor();
+            }
+            if (done.failure() != null) {
+                done.failure().printStackTrace();
+                setStatusMessage("Could not decompress %s %s".formatted(currentFile.getFileName(),
+                        done.failure().getMessage()));
+            }
+            scheduler.requestFrame();
+        } finally {
+            editorLock.unlock();
+        }
+    }
+
+    /**
+     * Puts the cursor back where it was before a compressed file was
+     * reloaded, now that its row has been decompressed again.
+     */
+    private static void restoreCursor() {
+        cursorY = restoreRow;
+        cursorX = cursorY < content.lineCount() ? Math.min(restoreColumn, content.lineLength(cursorY)) : 0;
+        offsetY = Math.min(restoreOffsetY, cursorY);
+        restoreRow = -1;
+        redraw();
+    }
+
+    /**
+     * A buffer kept resident after its session, the same as its file while
+     * that matches {@code fingerprint}.
+     */
+    private record Resident(TextBuffer content, Fingerprint fingerprint, int cursorX, int cursorY) {
+    }
+
+    private static void stoppedFollowing(Follow stopped) {
+        editorLock.lock();
+        try {
+            if (follow != stopped) {
+                return;
+            }
+            follow = null;
+            if (stopped.truncated()) {
+                setStatusMessage("%s was truncated, stopped following it".formatted(currentFile.getFileName()));
+            } else if (stopped.failure() != null) {
+                stopped.failure().printStackTrace();
+                setStatusMessage("Stopped following %s".formatted(stopped.failure().getMessage()));
+            }
+            scheduler.requestFrame();
+        } finally {
+            editorLock.unlock();
         }
     }
 
+    /**
+     * Scrolls by screen rows so the cursor is in view, measuring the rows
+     * that end up on screen. Measuring may show a row above the cursor to
+     * take more screen rows than assumed, which moves the cursor down, so
+     * this goes on until nothing on screen changes.
+     */
+    private static void scrollWrapped() {
+        offsetX = 0;
+        do {
+            wrap.measure(cursorY);
+            int cursorRow = cursorScreenRow();
+            int top = wrap.screenRow(offsetY) + offsetYWrapped;
+            if (cursorRow < top) {
+                top = cursorRow;
+            } else if (cursorRow >= top + rows) {
+                top = cursorRow - rows + 1;
+            }
+            offsetY = wrap.rowAt(top);
+            offsetYWrapped = top - wrap.screenRow(offsetY);
+        } while (wrap.measure(offsetY, offsetYWrapped + rows));
+    }
+
+    private static int cursorScreenRow() {
+        return wrap.screenRow(cursorY) + layout.screenColumn(cursorY, cursorX) / columns;
+    }
+
+    /**
+     * Turns wrapping rows at the edge of the screen on or off.
+     */
+    private static void toggleWrap() {
+        wrap = wrap == null ? new Wrap(content, layout, columns) : null;
+        offsetYWrapped = 0;
+        redraw();
+    }
+
     private static Path currentFile;
+    private static Journal journal;
+    private static Save save;
+    private static Follow follow;
+    // buffers of files left saved, kept by a server for when they are opened again
+    private static Map<Path, Resident> resident;
+    // the version of the buffer the file holds, and what the file was like then
+    private static long savedVersion = -1;
+    private static Fingerprint fingerprint;
+    private static long savingVersion;
+    private static TextSnapshot savingSnapshot;
+    // the file changed on disk and Ctrl-S was pressed once, again overwrites it
+    private static boolean overwrite;
+    // the file is gzip compressed, decompressed into the buffer while gunzip is not null
+    private static boolean compressed;
+    private static Gunzip gunzip;
+    // where the cursor was before the compressed file was reloaded, -1 once it is back
+    private static int restoreRow = -1;
+    private static int restoreColumn;
+    private static int restoreOffsetY;
+    private static Layout layout;
+    // screen rows per row while rows are wrapped, null while they scroll sideways
+    private static Wrap wrap;
+    private static Highlighter highlighter;
+    // a swap file left behind by an editor that died, to offer to recover once running
+    private static Journal.Recovered recovered;
+
+    /**
+     * Loads {@code path} as the file being edited.
+     */
+    static void openFile(Path path) throws IOException {
+        compressed = Gunzip.isCompressed(path);
+        Resident kept = resident == null ? null : resident.remove(path);
+        if (kept != null && kept.fingerprint().matches(path)) {
+            content = kept.content();
+            fingerprint = kept.fingerprint();
+            cursorX = kept.cursorX();
+            cursorY = kept.cursorY();
+        } else {
+            kept = null;
+            // the charset is worked out from the start of the file, which takes decompressing
+            content = compressed ? PieceTable.forSample(Gunzip.sample(path, SAMPLE_SIZE)) : load(path);
+            // decompressed bytes are not the file's, it is only told apart by size and time
+            fingerprint = Fingerprint.of(path, compressed ? null : content.snapshot());
+        }
+        savedVersion = content.version();
+        layout = new Layout(content);
+        if (wrap != null) {
+            wrap = new Wrap(content, layout, columns);
+        }
+        // the cursor, scroll and matches were in whatever buffer was open before
+        resetSearch();
+        restoreRow = -1;
+        cursorY = Math.max(0, Math.min(cursorY, content.loadRows(cursorY + 1) - 1));
+        cursorX = cursorY < content.lineCount() ? Math.min(cursorX, content.lineLength(cursorY)) : 0;
+        offsetY = Math.min(offsetY, cursorY);
+        offsetYWrapped = 0;
+        offsetX = 0;
+        currentFile = path;
+        highlight(path);
+        if (compressed && kept == null) {
+            gunzip = Gunzip.start(path, TextEditor::decompressed, TextEditor::decompressedAll);
+        }
+        if (!content.charset().equals(StandardCharsets.UTF_8)) {
+            setStatusMessage("Opened as " + content.charset().name());
+        }
+        redraw();
+    }
+
+    private static void highlight(Path path) {
+        Syntax syntax = Syntax.forFile(path);
+        highlighter = syntax == null ? null : new Highlighter(content, layout, syntax, row -> screen.markRow(row));
+    }
+
+    static TextBuffer load(Path path) throws IOException {
+        if (Files.size(path) >= MAP_THRESHOLD) {
+            return PieceTable.map(path);
+        }
+        return new PieceTable(Files.readAllBytes(path));
+    }
+
+    private static Path metricsFile() {
+        String file = System.getProperty("editor.metrics.file");
+        return file == null ? null : Path.of(file);
+    }
+
+    /**
+     * Keeps the metrics overlay current while no input comes in.
+     */
+    private static void metricsReported() {
+        editorLock.lock();
+        try {
+            if (showMetrics) {
+                scheduler.requestFrame();
+            }
+        } finally {
+            editorLock.unlock();
+        }
+    }
+
+    /**
+     * Has a frame painted from a thread other than the input thread.
+     */
+    private static void requestFrame() {
+        editorLock.lock();
+        try {
+            scheduler.requestFrame();
+        } finally {
+            editorLock.unlock();
+        }
+    }
+
+    /**
+     * Forgets what is on the terminal so the next frame paints every row.
+     */
+    static void redraw() {
+        screen.invalidate();
+    }
 
     public static void openFile(String[] args) {
         if (args.length == 1) {
-            String filename = args[0];
-            Path path = Path.of(filename);
-            if (Files.exists(path)) {
-                try (Stream<String> stream = Files.lines(path)) {
-                    content = stream.collect((Collectors.toCollection(ArrayList::new)));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    // TODO
-                }
-                currentFile = path;
+            edit(Path.of(args[0]));
+            close();
+        }
+    }
+
+    /**
+     * Edits {@code path}, creating the file if there is none, until Ctrl-Q or
+     * the end of input.
+     */
+    static void edit(Path path) {
+        if (Files.exists(path)) {
+            try {
+                openFile(path);
+            } catch (IOException e) {
+                // leave currentFile unset so a save cannot overwrite what failed to load
+                setStatusMessage("Could not open %s: %s".formatted(path, e.getMessage()));
+            }
+        } else {
+            try {
+                currentFile = Files.createFile(path);
+                compressed = false;
+                highlight(path);
+                matchesFile(content.version(), content.snapshot());
+            } catch (IOException e) {
+                setStatusMessage("Could not create %s: %s".formatted(path, e.getMessage()));
+            }
+        }
+        startJournal();
+        if (FOLLOW) {
+            toggleFollow();
+        }
+        metrics.start(TextEditor::metricsReported);
+        run();
+        if (follow != null) {
+            follow.stop();
+        }
+        boolean complete = gunzip == null;
+        if (gunzip != null) {
+            gunzip.stop();
+        }
+        if (journal != null) {
+            // the swap file only outlives a session that did not end with Ctrl-Q
+            if (running) {
+                journal.close();
             } else {
+                journal.delete();
+            }
+        }
+        content.setChangeListener(null);
+        if (resident != null && complete && currentFile != null && content.version() == savedVersion) {
+            resident.put(currentFile, new Resident(content, fingerprint, cursorX, cursorY));
+        }
+        follow = null;
+        gunzip = null;
+        restoreRow = -1;
+        fingerprint = null;
+        overwrite = false;
+        journal = null;
+        recovered = null;
+        currentFile = null;
+        statusMessage = null;
+    }
+
+    /**
+     * Keeps the buffers of up to {@code buffers} files left saved after their
+     * session, for a server to open them again without reading them.
+     */
+    static void keepResident(int buffers) {
+        resident = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Resident> eldest) {
+                return size() > buffers;
+            }
+        };
+    }
+
+    /**
+     * Notes that the buffer as of {@code version}, {@code snapshot}, is what
+     * the file holds now.
+     */
+    private static void matchesFile(long version, TextSnapshot snapshot) {
+        try {
+            fingerprint = Fingerprint.of(currentFile, compressed ? null : snapshot);
+            savedVersion = version;
+        } catch (IOException e) {
+            fingerprint = null;
+            savedVersion = -1;
+        }
+    }
+
+    private static void startJournal() {
+        // the journal replays edits by offset, which a compressed file still
+        // being decompressed may not have yet
+        if (!JOURNAL || currentFile == null || compressed) {
+            return;
+        }
+        try {
+            Journal.Recovered found = Journal.read(currentFile);
+            if (found != null && !found.current()) {
+                Path old = found.path().resolveSibling(found.path().getFileName() + ".old");
+                Files.move(found.path(), old, StandardCopyOption.REPLACE_EXISTING);
+                setStatusMessage("Swap file is for another version of the file, moved it to %s".formatted(old));
+            } else if (found != null && !found.changes().isEmpty()) {
+                recovered = found;
+                return;
+            }
+            journal = Journal.start(currentFile, JOURNAL_INTERVAL_MILLIS, TextEditor::journalFailed);
+            content.setChangeListener(journal);
+        } catch (IOException e) {
+            e.printStackTrace();
+            setStatusMessage("Could not start the swap file %s".formatted(e.getMessage()));
+        }
+    }
+
+    private static void journalFailed(Journal failed) {
+        editorLock.lock();
+        try {
+            if (journal != failed) {
+                return;
+            }
+            setStatusMessage("Swap file stopped, unsaved edits are no longer kept: %s"
+                    .formatted(failed.failure().getMessage()));
+            scheduler.requestFrame();
+        } finally {
+            editorLock.unlock();
+        }
+    }
+
+    /**
+     * Asks whether to replay the changes in a swap file left behind on top
+     * of the file, keeping the swap file as it is if input ends first.
+     */
+    private static void offerRecovery() throws IOException {
+        setStatusMessage("Unsaved changes to %s found, recover them? (y/n)".formatted(currentFile.getFileName()));
+        int key;
+        do {
+            key = readKey();
+        } while (key != 'y' && key != 'n' && key != '\033');
+        clearStatusMessage();
+
+        if (key == 'y') {
+            for (TextBuffer.Replacement change : recovered.changes()) {
+                content.replace(List.of(change));
+            }
+            journal = Journal.resume(currentFile, recovered, JOURNAL_INTERVAL_MILLIS, TextEditor::journalFailed);
+            redraw();
+            showEdit(recovered.changes().get(recovered.changes().size() - 1).from(), null);
+            setStatusMessage("Recovered %d changes".formatted(recovered.changes().size()));
+        } else {
+            journal = Journal.start(currentFile, JOURNAL_INTERVAL_MILLIS, TextEditor::journalFailed);
+        }
+        content.setChangeListener(journal);
+        recovered = null;
+    }
+
+    /**
+     * Handles keys until Ctrl-Q or the end of input, painting from the render
+     * thread meanwhile.
+     */
+    static void run() {
+        running = true;
+        editorLock.lock();
+        try {
+            scheduler.start();
+            if (recovered != null) {
                 try {
-                    currentFile = Files.createFile(path);
+                    offerRecovery();
                 } catch (IOException e) {
-                    e.printStackTrace();
-                    // TODO
+                    running = false;
                 }
             }
-            while (true) {
-                refreshScreen();
-                int key;
+            while (running) {
                 try {
-                    key = readKey();
+                    int key = readKey();
+                    long started = metrics.keyStarted();
                     handleKey(key);
+                    metrics.keyHandled(started);
                 } catch (IOException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
+                    // end of input, or the terminal is gone: no more keys to handle
+                    break;
                 }
             }
+            awaitSave();
+            scheduler.stop();
+        } finally {
+            editorLock.unlock();
         }
     }
 
+    /**
+     * Clears the screen and gives the terminal back.
+     */
+    static void close() {
+        frame.clear();
+        frame.append("\033[?2004l").append("\033[?1004l").append("\033[2J").append("\033[H");
+        flush();
+        terminal.disableRawMode();
+    }
+
     public static void initEditor() {
-        wTerminal = WindowsTerminal.getInstance();
-        wTerminal.enableRawMode();
+        Terminal terminal = Terminal.system();
+        // -Deditor.record=<trace> records the session for Replay
+        String trace = System.getProperty("editor.record");
+        if (trace != null) {
+            try {
+                terminal = new KeyTrace.Recorder(terminal, Path.of(trace));
+            } catch (IOException e) {
+                setStatusMessage("Not recording to %s: %s".formatted(trace, e.getMessage()));
+            }
+        }
+        initEditor(terminal, new FileOutputStream(FileDescriptor.out).getChannel());
+    }
+
+    /**
+     * Sets the editor up on {@code terminal}, painting to {@code out}. Lets the
+     * benchmarks drive the editor without a console.
+     */
+    static void initEditor(Terminal terminal, WritableByteChannel out) {
+        TextEditor.terminal = terminal;
+        TextEditor.out = out;
+        terminal.enableRawMode();
+        input = new InputBuffer(terminal);
         offsetX = 0;
         offsetY = 0;
-        cursorX = 1;
-        cursorY = 1;
-        content = List.of();
-        WindowSize windowSize = wTerminal.getWindowSize();
+        offsetYWrapped = 0;
+        cursorX = 0;
+        cursorY = 0;
+        content = new PieceTable();
+        layout = new Layout(content);
+        highlighter = null;
+        // a server starts a session per client, nothing of the last may carry over
+        compressed = false;
+        savedVersion = -1;
+        statusMessage = null;
+        resetSearch();
+        WindowSize windowSize = terminal.getWindowSize();
         columns = windowSize.columns();
         rows = windowSize.rows() - 1;
+        screen = new Screen(rows);
+        wrap = Boolean.getBoolean("editor.wrap") ? new Wrap(content, layout, columns) : null;
+        // have pastes delimited by esc[200~ ... esc[201~
+        frame.clear();
+        frame.append("\033[?2004h");
+        // and focus changes reported, to look for changes to the file on return
+        frame.append("\033[?1004h");
+        flush();
+        scheduler = new RenderScheduler(editorLock, FRAMES_PER_SECOND, TextEditor::refreshScreen, TextEditor::flush);
     }
 
-    private static void refreshScreen() {
+    static void refreshScreen() {
+        long started = metrics.composeStarted();
         scroll();
-        StringBuilder builder = new StringBuilder();
+        frame.clear();
 
-        drawCusorInTopLeft(builder);
-        drawContent(builder);
-        drawStatusBar(builder);
-        drawCursor(builder);
-        System.out.print(builder);
+        // while wrapping, the screen scrolls by screen rows
+        screen.beginFrame(wrap == null ? offsetY : wrap.screenRow(offsetY) + offsetYWrapped, offsetX, frame);
+        drawContent(frame);
+        drawStatusBar(frame);
+        drawCursor(frame);
+        metrics.composed(started);
     }
 
-    private static void drawCusorInTopLeft(StringBuilder builder) {
-        builder.append("\033[H");
+    static void flush() {
+        try {
+            long started = System.nanoTime();
+            frame.writeTo(out);
+            metrics.flushed(started, frame.length());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    private static void drawCursor(StringBuilder builder) {
-        builder.append(String.format("\033[%d;%dH", cursorY - offsetY + 1, cursorX - offsetX + 1));
+    private static void drawCursor(OutputBuffer frame) {
+        int screenX = layout.screenColumn(cursorY, cursorX);
+        if (wrap != null) {
+            int top = wrap.screenRow(offsetY) + offsetYWrapped;
+            frame.append("\033[").append(cursorScreenRow() - top + 1).append(';').append(screenX % columns + 1)
+                    .append('H');
+            return;
+        }
+        frame.append("\033[").append(cursorY - offsetY + 1).append(';').append(screenX - offsetX + 1).append('H');
     }
 
     public static void setStatusMessage(String message) {
@@ -210,13 +965,146 @@ public class TextEditor {
         FORWARDS, BACKWARDS
     }
 
-    static int lastMatch = -1;
+    // byte offset of the match the cursor was last moved to
+    static long lastMatch = -1;
 
     static SearchDirection searchDirection = SearchDirection.FORWARDS;
 
+    private static final SearchEngine searchEngine = new SearchEngine(ForkJoinPool.commonPool());
+    private static SearchEngine.Search search;
+    private static long searchVersion;
+    // set when a key asked to move to a match the running search has not found yet
+    private static boolean searchPending;
+
     public static void editorFind() {
-        prompt("Search: %s (Use ESC/Arrows/Enter)", (query, key) -> {
+        find("Search: %s (Use ESC/Arrows/Enter)", false);
+    }
+
+    /**
+     * Jumps to a line number, to a byte offset given as {@code b<offset>} or
+     * to the start or the end of the file given as {@code ^} or {@code $}.
+     */
+    public static void editorGoTo() {
+        String target = prompt("Go to: %s (line, b<offset>, ^ or $)", null);
+        if (target == null || target.isBlank()) {
+            return;
+        }
+        target = target.strip();
+        try {
+            if (target.equals("^")) {
+                jumpTo(0, 0);
+            } else if (target.equals("$")) {
+                int row = Math.max(0, content.loadRows(Integer.MAX_VALUE) - 1);
+                jumpTo(row, row < content.lineCount() ? content.lineLength(row) : 0);
+            } else if (target.startsWith("b")) {
+                long offset = Long.parseLong(target.substring(1));
+                int row = content.rowAtOffset(offset);
+                jumpTo(row, row < content.lineCount() ? content.columnAtOffset(row, offset) : 0);
+            } else {
+                int line = Integer.parseInt(target);
+                jumpTo(Math.max(0, Math.min(line, content.loadRows(line)) - 1), 0);
+            }
+        } catch (NumberFormatException e) {
+            setStatusMessage("Not a line or an offset: %s".formatted(target));
+        } catch (IndexOutOfBoundsException e) {
+            setStatusMessage("Offset past the end of the file: %s".formatted(target.substring(1)));
+        }
+    }
+
+    /**
+     * Puts the cursor on {@code row}, scrolled to the middle of the screen.
+     */
+    private static void jumpTo(int row, int column) {
+        cursorY = row;
+        cursorX = column;
+        offsetY = Math.max(0, row - rows / 2);
+        offsetYWrapped = 0;
+    }
+
+    /**
+     * Moves the cursor to where an undo or redo changed the text at
+     * {@code offset}, or says {@code otherwise} if there was nothing to do.
+     */
+    private static void showEdit(long offset, String otherwise) {
+        if (offset < 0) {
+            setStatusMessage(otherwise);
+            return;
+        }
+        cursorY = content.rowAtOffset(offset);
+        cursorX = cursorY < content.lineCount() ? content.columnAtOffset(cursorY, offset) : 0;
+        editedFrom(cursorY);
+        screen.markRowsFrom(cursorY);
+    }
+
+    /**
+     * Finds a regular expression, then replaces every match with what is
+     * entered next. The replace runs in the background, showing its progress
+     * until it is done or cancelled with ESC, and lands as a single edit.
+     */
+    public static void editorReplace() {
+        String regex = find("Replace regex: %s (Use ESC/Arrows/Enter)", true);
+        if (regex == null || regex.isBlank()) {
+            return;
+        }
+        String replacement = prompt("Replace with: %s (ESC to cancel)", null);
+        if (replacement == null) {
+            return;
+        }
+
+        SearchEngine.Replace replace;
+        try {
+            replace = searchEngine.replaceAll(content.snapshot(), regex, replacement, content.charset());
+        } catch (PatternSyntaxException e) {
+            setStatusMessage("Invalid regex: %s".formatted(e.getDescription()));
+            return;
+        }
+        long version = content.version();
+        // keys typed while replacing stay buffered until it is done, ESC alone cancels
+        boolean typedAhead = false;
+        try {
+            while (replace.isRunning()) {
+                setStatusMessage("Replacing... %d%% (ESC to cancel)".formatted(replace.percentDone()));
+                if (typedAhead) {
+                    awaitJob(replace, PROGRESS_INTERVAL_MILLIS);
+                } else if (awaitInput(PROGRESS_INTERVAL_MILLIS)) {
+                    if (input.peek() != '\033' || input.buffered() > 1) {
+                        typedAhead = true;
+                    } else if (readKey() == '\033') {
+                        replace.cancel();
+                        setStatusMessage("Replace cancelled");
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            replace.cancel();
+            setStatusMessage("Replace cancelled");
+            return;
+        }
+        if (!replace.isDone() || content.version() != version) {
+            setStatusMessage("Replace failed");
+            return;
+        }
+
+        replace.apply(content);
+        editedFrom(0);
+        screen.markRowsFrom(offsetY);
+        int lineLength = currentLineLength();
+        if (cursorX > lineLength) {
+            cursorX = Math.max(0, lineLength);
+        }
+        setStatusMessage("Replaced %d occurrences".formatted(replace.count()));
+    }
+
+    /**
+     * Prompts for a query and moves the cursor between its matches while it
+     * is being typed. Returns the query, or null if the prompt was escaped.
+     */
+    private static String find(String message, boolean regex) {
+        return prompt(message, (query, key) -> {
             if (query == null || query.isBlank()) {
+                cancelSearch();
                 lastMatch = -1;
                 searchDirection = SearchDirection.FORWARDS;
                 return;
@@ -230,41 +1118,101 @@ public class TextEditor {
                 searchDirection = SearchDirection.FORWARDS;
             }
 
-            if (lastMatch == -1)
-                searchDirection = SearchDirection.FORWARDS;
-            int current = lastMatch;
-
-            for (int i = 0; i < content.size(); i++) {
-                current += searchDirection == SearchDirection.FORWARDS ? 1 : -1;
-                if (current == -1) {
-                    current = content.size() - 1;
-                } else if (current == content.size()) {
-                    current = 0;
+            if (search == null || !search.isFor(query, regex) || searchVersion != content.version()) {
+                cancelSearch();
+                SearchEngine.Search started;
+                try {
+                    started = regex ? searchEngine.findRegex(content.snapshot(), query, content.charset())
+                            : searchEngine.find(content.snapshot(), query, content.charset());
+                } catch (PatternSyntaxException e) {
+                    // most likely still being typed
+                    return;
                 }
-
-                String line = content.get(current);
-
-                int match = line.indexOf(query);
-
-                if (match != -1) {
-                    lastMatch = current;
-                    cursorY = current;
-                    cursorX = match;
-                    offsetY = content.size();
+                search = started;
+                searchVersion = content.version();
+                started.whenDone(() -> {
+                    editorLock.lock();
+                    try {
+                        if (search == started) {
+                            showMatch();
+                            scheduler.requestFrame();
+                        }
+                    } finally {
+                        editorLock.unlock();
+                    }
+                });
+            }
+            searchPending = true;
+            if (key == '\r' || key == '\033') {
+                // the prompt is done, keys after it expect the cursor on the match
+                try {
+                    search.await();
+                } catch (CancellationException | CompletionException e) {
                     return;
                 }
             }
+            if (search.isDone()) {
+                showMatch();
+            }
         });
     }
 
-    private static void prompt(String initialMessage, BiConsumer<String, Integer> callback) {
+    private static void cancelSearch() {
+        if (search != null) {
+            search.cancel();
+            search = null;
+        }
+        searchPending = false;
+    }
+
+    /**
+     * Forgets the search and the match it was on, for a buffer that was
+     * replaced, whose offsets they do not belong to.
+     */
+    private static void resetSearch() {
+        cancelSearch();
+        lastMatch = -1;
+        searchDirection = SearchDirection.FORWARDS;
+    }
+
+    /**
+     * Moves the cursor to the match the last search key asked for, once the
+     * running search is far enough along to know it.
+     */
+    private static void showMatch() {
+        if (!searchPending) {
+            return;
+        }
+        searchPending = false;
+        long match;
+        if (lastMatch == -1) {
+            match = search.next(-1);
+        } else if (searchDirection == SearchDirection.FORWARDS) {
+            match = search.next(lastMatch);
+        } else {
+            match = search.previous(lastMatch);
+        }
+        if (match == -1) {
+            return;
+        }
+        lastMatch = match;
+        cursorY = content.rowAtOffset(match);
+        cursorX = content.columnAtOffset(cursorY, match);
+        offsetY = content.lineCount();
+    }
+
+    /**
+     * Reads a line of input in the status bar, passing it to {@code callback},
+     * if there is one, after every key. Returns the line, or null if it was
+     * escaped.
+     */
+    private static String prompt(String initialMessage, BiConsumer<String, Integer> callback) {
         String message = initialMessage;
 
         StringBuilder userInputBuilder = new StringBuilder();
 
         while (true) {
             setStatusMessage(message);
-            refreshScreen();
 
             int key;
             try {
@@ -281,67 +1229,230 @@ public class TextEditor {
                 }
             } else if (key == '\033') { // escap
                 clearStatusMessage();
-                callback.accept(userInputBuilder.toString(), key);
-                return;
+                if (callback != null) {
+                    callback.accept(userInputBuilder.toString(), key);
+                }
+                return null;
             } else if (key == 13) { // user pressed enter
                 clearStatusMessage();
-                callback.accept(userInputBuilder.toString(), key);
-                return;
+                if (callback != null) {
+                    callback.accept(userInputBuilder.toString(), key);
+                }
+                return userInputBuilder.toString();
             } else if (!Character.isISOControl(key) && key < 128) {
                 userInputBuilder.append((char) key);
                 message = userInputBuilder.toString();
             }
 
-            callback.accept(userInputBuilder.toString(), key);
+            if (callback != null) {
+                callback.accept(userInputBuilder.toString(), key);
+            }
         }
     }
 
-    private static void drawStatusBar(StringBuilder builder) {
-        String toDraw = statusMessage != null ? statusMessage : ("Rows: " + rows + "X:" + cursorX + " Y: " + cursorY + "  Save: Ctrl+s  Quit: Ctrl+q");
-
-        builder.append("\033[7m")
-                .append(toDraw)
-                .append(" ".repeat(Math.max(0, columns - toDraw.length())))
-                .append("\033[0m");
+    private static void drawStatusBar(OutputBuffer frame) {
+        OutputBuffer bar = screen.beginStatusRow();
+        bar.append("\033[7m");
+        int start = bar.length();
+        int width;
+        Metrics.Report report = metrics.latest();
+        String status = save != null && save.isRunning()
+                ? "Saving %s %d%%".formatted(currentFile.getFileName(), save.percentDone())
+                : gunzip != null && statusMessage == null
+                        ? "Decompressing %s %d%%".formatted(currentFile.getFileName(), gunzip.percentDone())
+                        : statusMessage;
+        // never write past the last column, the terminal would wrap and scroll
+        if (status != null) {
+            String message = status.substring(0, Math.min(status.length(), columns));
+            bar.append(message);
+            width = message.length();
+        } else if (showMetrics && report != null) {
+            String overlay = report.overlay();
+            overlay = overlay.substring(0, Math.min(overlay.length(), columns));
+            bar.append(overlay);
+            width = overlay.length();
+        } else {
+            bar.append("Rows: ").append(rows).append("X:").append(cursorX).append(" Y: ").append(cursorY)
+                    .append("  Save: Ctrl+s  Quit: Ctrl+q");
+            bar.truncate(start + columns);
+            width = bar.length() - start;
+        }
+        for (; width < columns; width++) {
+            bar.append((byte) ' ');
+        }
+        bar.append("\033[0m");
+        screen.endRow(rows, frame);
     }
 
-    private static void drawContent(StringBuilder builder) {
+    private static void drawContent(OutputBuffer frame) {
+        if (highlighter != null) {
+            highlighter.prepare(offsetY, offsetY + rows);
+        }
+        if (wrap != null) {
+            drawWrapped(frame);
+            return;
+        }
         for (int i = 0; i < rows; i++) {
             int fileI = offsetY + i;
-            if (fileI >= content.size()) {
-                builder.append("~");
+            if (!screen.isDirty(i, fileI, 0)) {
+                continue;
+            }
+            OutputBuffer line = screen.beginRow(i, fileI, 0);
+            if (fileI >= content.lineCount()) {
+                line.append((byte) '~');
+            } else if (highlighter != null) {
+                highlighter.writeLine(fileI, offsetX, offsetX + columns, line);
             } else {
-                String line = content.get(fileI);
-                int lengthToDraw = line.length() - offsetX;
+                layout.writeLine(fileI, offsetX, offsetX + columns, line, null);
+            }
+            screen.endRow(i, frame);
+        }
+    }
 
-                if (lengthToDraw < 0) {
-                    lengthToDraw = 0;
-                }
-                if (lengthToDraw > columns) {
-                    lengthToDraw = columns;
+    /**
+     * Draws the screen rows, rows of the buffer running on over as many as
+     * they take. Which row a screen row shows moves with edits above it, so
+     * besides the rows marked dirty those now showing another part of the
+     * buffer than before are composed.
+     */
+    private static void drawWrapped(OutputBuffer frame) {
+        int lineCount = content.lineCount();
+        int fileI = offsetY;
+        int part = offsetYWrapped;
+        for (int i = 0; i < rows; i++) {
+            int shown = Math.min(fileI, lineCount);
+            if (screen.isDirty(i, shown, part)) {
+                OutputBuffer line = screen.beginRow(i, shown, part);
+                if (fileI >= lineCount) {
+                    line.append((byte) '~');
+                } else {
+                    int from = part * columns;
+                    if (highlighter != null) {
+                        highlighter.writeLine(fileI, from, from + columns, line);
+                    } else {
+                        layout.writeLine(fileI, from, from + columns, line, null);
+                    }
                 }
+                screen.endRow(i, frame);
+            }
+            if (fileI < lineCount && ++part >= wrap.measure(fileI)) {
+                fileI++;
+                part = 0;
+            }
+        }
+    }
 
-                if (lengthToDraw > 0) {
-                    builder.append(line, offsetX, offsetX + lengthToDraw);
-                }
+    /**
+     * Like {@link #awaitInput()}, but gives up after {@code timeoutMillis}.
+     * Returns whether there is input.
+     */
+    private static boolean awaitInput(long timeoutMillis) throws IOException {
+        scheduler.requestFrame();
+        editorLock.unlock();
+        boolean hasInput;
+        try {
+            hasInput = input.hasInput(timeoutMillis);
+        } finally {
+            editorLock.lock();
+        }
+        if (hasInput) {
+            metrics.inputReceived();
+            checkWindowSize();
+        }
+        return hasInput;
+    }
 
-            }
-            builder.append("\033[K\r\n");
+    /**
+     * Paints the status while waiting at most {@code timeoutMillis} for
+     * {@code job} to finish, leaving input alone.
+     */
+    private static void awaitJob(SearchEngine.Job job, long timeoutMillis) {
+        scheduler.requestFrame();
+        editorLock.unlock();
+        try {
+            job.await(timeoutMillis);
+        } finally {
+            editorLock.lock();
+        }
+    }
+
+    private static void awaitInput() throws IOException {
+        // all input so far has been handled, paint it while waiting for more
+        scheduler.requestFrame();
+        fillUnlocked();
+    }
+
+    private static void fillUnlocked() throws IOException {
+        editorLock.unlock();
+        try {
+            input.fill();
+        } finally {
+            editorLock.lock();
+        }
+        metrics.inputReceived();
+        checkWindowSize();
+    }
+
+    /**
+     * Picks up a new size of the terminal, checked whenever input comes in.
+     * Wrapped rows are measured again at the new width as they are shown.
+     */
+    private static void checkWindowSize() {
+        WindowSize windowSize = terminal.getWindowSize();
+        if (windowSize.rows() - 1 == rows && windowSize.columns() == columns) {
+            return;
+        }
+        columns = windowSize.columns();
+        rows = windowSize.rows() - 1;
+        screen = new Screen(rows);
+        if (wrap != null) {
+            wrap.resize(columns);
+        }
+    }
+
+    /**
+     * Returns the next byte of an escape sequence, releasing the editor lock
+     * if the rest of the sequence has not arrived yet.
+     */
+    private static int nextSequenceByte() throws IOException {
+        if (!input.hasBufferedInput()) {
+            fillUnlocked();
+        }
+        return input.next();
+    }
+
+    /**
+     * Whether more input follows an ESC within ESCAPE_TIMEOUT_MILLIS, making
+     * it the start of an escape sequence. The render thread may paint while
+     * this waits.
+     */
+    private static boolean escapeSequenceFollows() throws IOException {
+        if (input.hasBufferedInput()) {
+            return true;
+        }
+        editorLock.unlock();
+        try {
+            return input.hasInput(ESCAPE_TIMEOUT_MILLIS);
+        } finally {
+            editorLock.lock();
         }
     }
 
     private static int readKey() throws IOException {
-        int key = System.in.read();
-        if (key != '\033') {
+        if (!input.hasBufferedInput()) {
+            awaitInput();
+        }
+        int key = input.next();
+        if (key != '\033' || !escapeSequenceFollows()) {
             return key;
         }
 
-        int nextKey = System.in.read();
+        int nextKey = nextSequenceByte();
         if (nextKey != '[' && nextKey != 'O') {
             return nextKey;
         }
 
-        int yetAnotherKey = System.in.read();
+        int yetAnotherKey = nextSequenceByte();
 
         if (nextKey == '[') {
             return switch (yetAnotherKey) {
@@ -351,24 +1462,33 @@ public class TextEditor {
                 case 'D' -> ARROW_LEFT;
                 case 'H' -> HOME;
                 case 'F' -> END;
+                case 'I' -> FOCUS_IN; // with focus reporting on, esc[I and esc[O
+                case 'O' -> FOCUS_OUT;
                 case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> { // e.g: esc[5~ == page_up
-                    int yetYetAnotherChar = System.in.read();
+                    int number = yetAnotherKey - '0';
+                    int yetYetAnotherChar = nextSequenceByte();
+                    while (yetYetAnotherChar >= '0' && yetYetAnotherChar <= '9') {
+                        number = number * 10 + yetYetAnotherChar - '0';
+                        yetYetAnotherChar = nextSequenceByte();
+                    }
                     if (yetYetAnotherChar != '~') {
                         yield yetYetAnotherChar;
                     }
-                    switch (yetAnotherKey) {
-                        case '1':
-                        case '7':
+                    switch (number) {
+                        case 1:
+                        case 7:
                             yield HOME;
-                        case '3':
+                        case 3:
                             yield DEL;
-                        case '4':
-                        case '8':
+                        case 4:
+                        case 8:
                             yield END;
-                        case '5':
+                        case 5:
                             yield PAGE_UP;
-                        case '6':
+                        case 6:
                             yield PAGE_DOWN;
+                        case 200: // esc[200~ starts a bracketed paste
+                            yield readPaste();
                         default:
                             yield yetAnotherKey;
                     }
@@ -384,19 +1504,53 @@ public class TextEditor {
         }
     }
 
+    private static int readPaste() throws IOException {
+        pasteBuffer.clear();
+        input.readUntil(PASTE_END, pasteBuffer);
+        pastedText = pasteBuffer.decode();
+        return PASTE;
+    }
+
     public static int ctrl_key(int key) {
         return key & 0x1f;
     }
 
     private static void handleKey(int key) {
+        if (key != FOCUS_IN && key != FOCUS_OUT) {
+            // the cursor is the user's again
+            restoreRow = -1;
+        }
         if (key == ctrl_key('q')) {
             exit();
         } else if (key == '\r') {
             insertNewLine();
         } else if (key == ctrl_key('f')) {
             editorFind();
+        } else if (key == ctrl_key('r')) {
+            editorReplace();
+        } else if (key == ctrl_key('z')) {
+            showEdit(content.undo(), "Nothing to undo");
+        } else if (key == ctrl_key('y')) {
+            showEdit(content.redo(), "Nothing to redo");
+        } else if (key == ctrl_key('g')) {
+            editorGoTo();
+        } else if (key == ctrl_key('l')) {
+            toggleFollow();
+        } else if (key == ctrl_key('w')) {
+            toggleWrap();
+        } else if (key == ctrl_key('t')) {
+            showMetrics = !showMetrics;
         } else if (key == ctrl_key('s')) {
             editorSave();
+        } else if (key == ctrl_key('e')) {
+            reload();
+        } else if (key == FOCUS_IN) {
+            checkFile();
+        } else if (key == FOCUS_OUT) {
+            // nothing to do until the terminal has focus again
+        } else if (key == PASTE) {
+            insertText(pastedText);
+            pastedText = null;
         } else if (List.of(BACKSPACE, ctrl_key('h'), DEL).contains(key)) {
             deleteChar();
         } else if (List.of(ARROW_UP, ARROW_DOWN, ARROW_LEFT, ARROW_RIGHT, HOME, END, PAGE_UP, PAGE_DOWN)
@@ -405,81 +1559,100 @@ public class TextEditor {
         } else {
             insertChar(key);
         }
-        /*
-         * else {
-         * System.out.print((char) + key + " -> (" + key + ")\r\n");
-         * }
-         */
     }
 
+    /**
+     * Stops {@link #run()} once the key being handled is done.
+     */
     private static void exit() {
-        System.out.print("\033[2J");
-        System.out.print("\033[H");
-        wTerminal.disableRawMode();
-        System.exit(0);
+        running = false;
     }
 
     private static void moveCursor(int key) {
-        String line = currentLine();
+        int lineLength = currentLineLength();
+        if (wrap != null && List.of(ARROW_UP, ARROW_DOWN, PAGE_UP, PAGE_DOWN).contains(key)) {
+            moveCursorWrapped(key);
+            return;
+        }
         switch (key) {
             case ARROW_UP -> {
                 if (cursorY > 0) {
+                    int screenX = layout.screenColumn(cursorY, cursorX);
                     cursorY--;
+                    cursorX = layout.column(cursorY, screenX);
                 }
             }
             case ARROW_DOWN -> {
-                if (cursorY < content.size()) {
+                if (cursorY < content.lineCount()) {
+                    int screenX = layout.screenColumn(cursorY, cursorX);
                     cursorY++;
+                    cursorX = layout.column(cursorY, screenX);
                 }
             }
             case ARROW_LEFT -> {
                 if (cursorX > 0) {
-                    cursorX--;
+                    cursorX = layout.previous(cursorY, cursorX);
                 }
             }
             case ARROW_RIGHT -> {
-                if (line != null && cursorX < line.length()) {
-                    cursorX++;
+                if (lineLength >= 0 && cursorX < lineLength) {
+                    cursorX = layout.next(cursorY, cursorX);
                 }
             }
             case PAGE_UP, PAGE_DOWN -> {
-
+                // a page above the top or below the bottom of the screen,
+                // scrolled so it is at the edge the cursor moved towards
+                int screenX = layout.screenColumn(cursorY, cursorX);
                 if (key == PAGE_UP) {
-                    moveCursorToTopOffScreen();
-                } else if (key == PAGE_DOWN) {
-                    moveCursorToBottomOffScreen();
-                }
-
-                for (int i = 0; i < rows; i++) {
-                    moveCursor(key == PAGE_UP ? ARROW_UP : ARROW_DOWN);
+                    offsetY = Math.max(0, offsetY - rows);
+                    cursorY = offsetY;
+                } else {
+                    int target = offsetY + 2 * rows - 1;
+                    cursorY = Math.min(target, content.loadRows(target));
+                    offsetY = Math.max(0, cursorY - rows + 1);
                 }
-
+                cursorX = layout.column(cursorY, screenX);
             }
             case HOME -> cursorX = 0;
             case END -> {
-                if (line != null) {
-                    cursorX = line.length();
+                if (lineLength >= 0) {
+                    cursorX = lineLength;
                 }
             }
         }
 
-        String newLine = currentLine();
-        if (newLine != null && cursorX > newLine.length()) {
-            cursorX = newLine.length();
+        int newLineLength = currentLineLength();
+        if (newLineLength >= 0 && cursorX > newLineLength) {
+            cursorX = newLineLength;
         }
     }
 
-    private static String currentLine() {
-        return cursorY < content.size() ? content.get(cursorY) : null;
+    private static int currentLineLength() {
+        return cursorY < content.lineCount() ? content.lineLength(cursorY) : -1;
     }
 
-    private static void moveCursorToTopOffScreen() {
-        cursorY = offsetY;
-    }
-
-    private static void moveCursorToBottomOffScreen() {
-        cursorY = offsetY + rows - 1;
-        if (cursorY > content.size())
-            cursorY = content.size();
+    /**
+     * Moves the cursor by screen rows while rows are wrapped, keeping its
+     * screen column. A page goes straight to the screen row a page away
+     * rather than row by row.
+     */
+    private static void moveCursorWrapped(int key) {
+        wrap.measure(cursorY);
+        int screenX = layout.screenColumn(cursorY, cursorX) % columns;
+        int top = wrap.screenRow(offsetY) + offsetYWrapped;
+        int target = switch (key) {
+            case ARROW_UP -> cursorScreenRow() - 1;
+            case ARROW_DOWN -> cursorScreenRow() + 1;
+            case PAGE_UP -> top - rows;
+            default -> top + 2 * rows - 1;
+        };
+        target = Math.max(0, Math.min(target, wrap.screenRow(content.lineCount())));
+        cursorY = wrap.rowAt(target);
+        int part = Math.min(target - wrap.screenRow(cursorY), wrap.measure(cursorY) - 1);
+        cursorX = layout.column(cursorY, part * columns + screenX);
+        if (layout.screenColumn(cursorY, cursorX) < part * columns) {
+            // a wide character cut by the edge belongs to the screen row above
+            cursorX = layout.next(cursorY, cursorX);
+        }
     }
 }
@@ -0,0 +1,119 @@
+package my.projects;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * The bytes of a {@link TextBuffer} as they were at one point. Only the piece
+ * boundaries are copied; the pieces point into append-only storage, so a
+ * snapshot stays valid and can be read from other threads while the buffer
+ * keeps being edited.
+ */
+final class TextSnapshot {
+    private final ByteSource[] sources;
+    private final long[] starts;
+    private final long[] offsets;
+
+    /**
+     * {@code offsets} has one more entry than there are pieces, the last one
+     * being the length of the whole snapshot.
+     */
+    TextSnapshot(ByteSource[] sources, long[] starts, long[] offsets) {
+        this.sources = sources;
+        this.starts = starts;
+        this.offsets = offsets;
+    }
+
+    long length() {
+        return offsets[sources.length];
+    }
+
+    /**
+     * Returns the offset of the first {@code value} at or after {@code from},
+     * or -1 if there is none.
+     */
+    long indexOf(byte value, long from) {
+        for (int piece = pieceAt(from); piece < sources.length; piece++) {
+            long start = Math.max(from, offsets[piece]) - offsets[piece] + starts[piece];
+            long end = starts[piece] + offsets[piece + 1] - offsets[piece];
+            long found = sources[piece].indexOf(value, start, end);
+            if (found >= 0) {
+                return offsets[piece] + found - starts[piece];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies {@code count} bytes starting at document offset {@code from} into
+     * {@code destination}.
+     */
+    void copy(long from, byte[] destination, int offset, int count) {
+        int piece = pieceAt(from);
+        while (count > 0) {
+            long within = from - offsets[piece];
+            int chunk = (int) Math.min(count, offsets[piece + 1] - from);
+            sources[piece].copy(starts[piece] + within, destination, offset, chunk);
+            from += chunk;
+            offset += chunk;
+            count -= chunk;
+            piece++;
+        }
+    }
+
+    /**
+     * Writes the whole snapshot to {@code channel}. Pieces of a memory mapped
+     * file at least {@code transferSize} long are written straight from the
+     * mapping, everything else is gathered in {@code buffer} and written a full
+     * buffer at a time. {@code written} is told how many bytes are written
+     * after every write.
+     */
+    void writeTo(WritableByteChannel channel, ByteBuffer buffer, long transferSize, LongConsumer written)
+            throws IOException {
+        buffer.clear();
+        long done = 0;
+        for (int piece = 0; piece < sources.length; piece++) {
+            long position = starts[piece];
+            long end = position + offsets[piece + 1] - offsets[piece];
+            if (sources[piece] instanceof MappedFileSource && end - position >= transferSize) {
+                done = write(channel, buffer, done, written);
+                for (; position < end; position += transferSize) {
+                    long count = Math.min(transferSize, end - position);
+                    sources[piece].writeTo(position, count, channel);
+                    done += count;
+                    written.accept(done);
+                }
+                continue;
+            }
+            while (position < end) {
+                int chunk = (int) Math.min(buffer.remaining(), end - position);
+                sources[piece].copy(position, buffer, chunk);
+                position += chunk;
+                if (!buffer.hasRemaining()) {
+                    done = write(channel, buffer, done, written);
+                }
+            }
+        }
+        write(channel, buffer, done, written);
+    }
+
+    private static long write(WritableByteChannel channel, ByteBuffer buffer, long done, LongConsumer written)
+            throws IOException {
+        buffer.flip();
+        done += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        written.accept(done);
+        return done;
+    }
+
+    private int pieceAt(long offset) {
+        int piece = Arrays.binarySearch(offsets, 0, sources.length, offset);
+        return piece >= 0 ? piece : -piece - 2;
+    }
+}
@@ -0,0 +1,107 @@
+package my.projects;
+
+import java.util.ArrayDeque;
+
+/**
+ * Undo and redo stacks of primitive-encoded edits. An entry is a long[]
+ * holding the edit it belongs to, where it happened and references to the
+ * bytes it inserted and removed; the bytes themselves stay in the piece
+ * table's append-only storage, so an entry is a few dozen bytes however much
+ * text it covers. The layout is up to the {@link PieceTable}, except that
+ * {@link #GROUP} identifies the edit.
+ * <p>
+ * Once the entries take more than the limit, whole edits are dropped from the
+ * bottom of the undo stack, oldest first. The edit being recorded is never
+ * split: if it does not fit on its own it is dropped together with the rest
+ * of the stack, and so are any entries still to come for it.
+ */
+class UndoLog {
+    static final int GROUP = 0;
+
+    private final long limitBytes;
+    private final ArrayDeque<long[]> undo = new ArrayDeque<>();
+    private final ArrayDeque<long[]> redo = new ArrayDeque<>();
+    private long sizeBytes;
+    private long droppedGroup = -1;
+
+    UndoLog(long limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * Pushes an entry for a new edit, forgetting everything that was undone.
+     */
+    void record(long[] entry) {
+        while (!redo.isEmpty()) {
+            sizeBytes -= size(redo.pop());
+        }
+        long current = entry[GROUP];
+        if (current == droppedGroup) {
+            return;
+        }
+        undo.push(entry);
+        sizeBytes += size(entry);
+        while (sizeBytes > limitBytes && undo.peekLast()[GROUP] != current) {
+            long group = undo.peekLast()[GROUP];
+            while (undo.peekLast()[GROUP] == group) {
+                sizeBytes -= size(undo.removeLast());
+            }
+        }
+        if (sizeBytes > limitBytes) {
+            // undoing part of an edit would leave text nobody ever typed
+            undo.clear();
+            sizeBytes = 0;
+            droppedGroup = current;
+        }
+    }
+
+    /**
+     * Returns the entry recorded last, which may still be extended in place,
+     * or null if there is nothing to undo.
+     */
+    long[] last() {
+        return redo.isEmpty() ? undo.peek() : null;
+    }
+
+    /**
+     * Moves the entries of the most recent edit to the redo stack and
+     * returns them, most recent first. Returns an empty array if there is
+     * nothing to undo.
+     */
+    long[][] undo() {
+        return move(undo, redo);
+    }
+
+    /**
+     * Moves the entries of the most recently undone edit back to the undo
+     * stack and returns them, oldest first.
+     */
+    long[][] redo() {
+        return move(redo, undo);
+    }
+
+    private static long[][] move(ArrayDeque<long[]> from, ArrayDeque<long[]> to) {
+        if (from.isEmpty()) {
+            return new long[0][];
+        }
+        long group = from.peek()[GROUP];
+        int count = 0;
+        for (long[] entry : from) {
+            if (entry[GROUP] != group) {
+                break;
+            }
+            count++;
+        }
+        long[][] entries = new long[count][];
+        for (int i = 0; i < count; i++) {
+            entries[i] = from.pop();
+            to.push(entries[i]);
+        }
+        return entries;
+    }
+
+    private static long size(long[] entry) {
+        // array header and the deque's reference to it
+        return 24 + 8L * entry.length;
+    }
+}
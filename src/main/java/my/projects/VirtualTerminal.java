@@ -0,0 +1,168 @@
+package my.projects;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Terminal} living in memory, for running the editor under
+ * automation. Input is fed in chunks, each one coming out of a single
+ * {@link #read}, the way a real terminal delivers a keystroke or a paste.
+ * Output written to {@link #output()} is interpreted by a
+ * {@link ScreenModel}.
+ */
+class VirtualTerminal implements Terminal {
+    private static final byte[] END_OF_INPUT = new byte[0];
+
+    private final WindowSize size;
+    private final ScreenModel screen;
+    private final LinkedBlockingQueue<byte[]> input = new LinkedBlockingQueue<>();
+    private byte[] chunk;
+    private int chunkPosition;
+    private boolean ended;
+    private long bytesWritten;
+    private long writes;
+
+    VirtualTerminal(WindowSize size) {
+        this.size = size;
+        this.screen = new ScreenModel(size.rows(), size.columns());
+    }
+
+    /**
+     * Queues {@code bytes} to be read in one go.
+     */
+    void feed(byte[] bytes) {
+        if (bytes.length > 0) {
+            input.add(bytes);
+        }
+    }
+
+    /**
+     * Ends the input once everything fed so far has been read; reading past
+     * it throws {@link EOFException}.
+     */
+    void endInput() {
+        input.add(END_OF_INPUT);
+    }
+
+    ScreenModel screen() {
+        return screen;
+    }
+
+    long bytesWritten() {
+        return bytesWritten;
+    }
+
+    long writes() {
+        return writes;
+    }
+
+    /**
+     * Returns the channel the editor paints to.
+     */
+    WritableByteChannel output() {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int count = source.remaining();
+                if (source.hasArray()) {
+                    screen.write(source.array(), source.arrayOffset() + source.position(), count);
+                    source.position(source.limit());
+                } else {
+                    byte[] bytes = new byte[count];
+                    source.get(bytes);
+                    screen.write(bytes, 0, count);
+                }
+                bytesWritten += count;
+                writes++;
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void enableRawMode() {
+    }
+
+    @Override
+    public void disableRawMode() {
+    }
+
+    @Override
+    public WindowSize getWindowSize() {
+        return size;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (chunk == null) {
+            if (ended) {
+                throw new EOFException();
+            }
+            try {
+                chunk = input.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EOFException();
+            }
+            chunkPosition = 0;
+            if (chunk == END_OF_INPUT) {
+                chunk = null;
+                ended = true;
+                throw new EOFException();
+            }
+        }
+        int count = Math.min(length, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+        chunkPosition += count;
+        if (chunkPosition == chunk.length) {
+            chunk = null;
+        }
+        return count;
+    }
+
+    /**
+     * Chunks stand for separate reads of a real terminal, so once one has been
+     * read in full a chunk already queued behind it does not count: it did not
+     * arrive in time to continue an escape sequence. Only a chunk fed while
+     * waiting does.
+     */
+    @Override
+    public boolean waitForInput(long timeoutMillis) throws IOException {
+        if (chunk != null) {
+            return true;
+        }
+        if (ended || !input.isEmpty()) {
+            return false;
+        }
+        try {
+            byte[] next = input.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                return false;
+            }
+            chunk = next;
+            chunkPosition = 0;
+            if (next == END_OF_INPUT) {
+                chunk = null;
+                ended = true;
+                return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package my.projects;
 
+import java.io.EOFException;
+import java.io.IOException;
+
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
 
@@ -7,6 +10,7 @@ public class WindowsTerminal implements Terminal {
     private static WindowsTerminal wTerminal;
     private IntByReference inMode;
     private IntByReference outMode;
+    private int outCodePage;
 
     private WindowsTerminal() {
 
@@ -46,6 +50,9 @@ public class WindowsTerminal implements Terminal {
         outMode |= Kernel32.ENABLE_PROCESSED_OUTPUT;
         Kernel32.INSTANCE.SetConsoleMode(outHandle, outMode);
 
+        // frames are written to stdout as raw UTF-8 bytes
+        outCodePage = Kernel32.INSTANCE.GetConsoleOutputCP();
+        Kernel32.INSTANCE.SetConsoleOutputCP(Kernel32.CP_UTF8);
     }
 
     @Override
@@ -55,6 +62,8 @@ public class WindowsTerminal implements Terminal {
 
         Pointer outHandle = Kernel32.INSTANCE.GetStdHandle(Kernel32.STD_OUTPUT_HANDLE);
         Kernel32.INSTANCE.SetConsoleMode(outHandle, outMode.getValue());
+
+        Kernel32.INSTANCE.SetConsoleOutputCP(outCodePage);
     }
 
     @Override
@@ -65,4 +74,30 @@ public class WindowsTerminal implements Terminal {
         instance.GetConsoleScreenBufferInfo(handle, info);
         return new WindowSize(info.windowHeight(), info.windowWidth());
     }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int count = System.in.read(buffer, offset, length);
+        if (count < 0) {
+            throw new EOFException();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean waitForInput(long timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (System.in.available() == 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,413 @@
+package my.projects;
+
+import java.util.Arrays;
+
+/**
+ * How many screen rows each row of the buffer takes when rows are wrapped at
+ * the width of the screen. The counts are kept in blocks of about
+ * {@code BLOCK_ROWS} rows, and the rows and screen rows of the blocks are
+ * summed up in Fenwick trees, so a row and the screen row it starts on are
+ * converted into each other in logarithmic time however many rows there are,
+ * and inserting or removing rows only moves the counts of one block.
+ * <p>
+ * A row is only measured once it comes into view, until then it counts as a
+ * single screen row. After the width changes rows are measured again the
+ * same way, as they are shown, so neither a huge file nor a resize lays out
+ * anything off screen.
+ */
+final class Wrap {
+    private static final int BLOCK_ROWS = 1024;
+
+    private final TextBuffer content;
+    private final Layout layout;
+    private int width;
+    private int size;
+    // per block: screen rows of every row and the width each was measured
+    // at, 0 if never, for sizes[block] rows
+    private int[][] counts = new int[16][];
+    private int[][] measuredAt = new int[16][];
+    private int[] sizes = new int[16];
+    private int[] screenRows = new int[16];
+    private int blocks;
+    // tree[i] sums the blocks (i - lowestOneBit(i), i], one based
+    private int[] rowTree;
+    private int[] screenTree;
+    private boolean stale;
+    // the row within its block of the row last looked up by blockOf
+    private int within;
+
+    Wrap(TextBuffer content, Layout layout, int width) {
+        this.content = content;
+        this.layout = layout;
+        this.width = Math.max(1, width);
+        sync(content.lineCount());
+    }
+
+    void resize(int width) {
+        this.width = Math.max(1, width);
+    }
+
+    /**
+     * Rows {@code [row, row + oldRows)} have been replaced by
+     * {@code newRows} rows.
+     */
+    void edited(int row, int oldRows, int newRows) {
+        // rows taken in since the last lookup come before the edit
+        sync(content.lineCount() - newRows + oldRows);
+        row = Math.min(row, size);
+        if (oldRows == newRows) {
+            for (int end = Math.min(row + newRows, size); row < end; row++) {
+                int block = blockOf(row);
+                measuredAt[block][within] = 0;
+            }
+            return;
+        }
+        remove(row, Math.min(oldRows, size - row));
+        insert(row, newRows);
+    }
+
+    /**
+     * Forgets the rows from {@code row} on, for edits whose extent is not
+     * known.
+     */
+    void invalidateFrom(int row) {
+        row = Math.min(row, size);
+        remove(row, size - row);
+        sync(content.lineCount());
+    }
+
+    /**
+     * Measures the rows from {@code row} on that cover {@code screenRows}
+     * screen rows, returning whether any of them turned out to take another
+     * number of screen rows than was assumed.
+     */
+    boolean measure(int row, int screenRows) {
+        boolean changed = false;
+        for (int shown = 0; shown < screenRows && row < size; row++) {
+            int block = blockOf(row);
+            int count = counts[block][within];
+            int measured = measure(row);
+            shown += measured;
+            changed |= measured != count;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns how many screen rows {@code row} takes, measuring it if it has
+     * not been at the current width.
+     */
+    int measure(int row) {
+        sync(content.lineCount());
+        if (row >= size) {
+            return 1;
+        }
+        int block = blockOf(row);
+        int at = within;
+        if (measuredAt[block][at] != width) {
+            // a row exactly as wide as the screen wraps the cursor past its
+            // end onto a row of its own
+            int count = layout.rowWidth(row) / width + 1;
+            int delta = count - counts[block][at];
+            if (delta != 0) {
+                screenRows[block] += delta;
+                add(screenTree, block, delta);
+            }
+            counts[block][at] = count;
+            measuredAt[block][at] = width;
+        }
+        return counts[block][at];
+    }
+
+    /**
+     * Returns the screen row {@code row} starts on, counting from the top of
+     * the buffer.
+     */
+    int screenRow(int row) {
+        sync(content.lineCount());
+        if (row >= size) {
+            return sum(screenTree, blocks) + row - size;
+        }
+        int block = blockOf(row);
+        int sum = sum(screenTree, block);
+        int[] blockCounts = counts[block];
+        for (int i = 0; i < within; i++) {
+            sum += blockCounts[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the row screen row {@code screenRow} belongs to, or the row
+     * count for screen rows past the end of the buffer.
+     */
+    int rowAt(int screenRow) {
+        sync(content.lineCount());
+        sumUp();
+        int block = 0;
+        int row = 0;
+        int remaining = screenRow;
+        for (int step = Integer.highestOneBit(Math.max(1, blocks)); step > 0; step >>= 1) {
+            if (block + step <= blocks && screenTree[block + step] <= remaining) {
+                block += step;
+                remaining -= screenTree[block];
+                row += rowTree[block];
+            }
+        }
+        if (block == blocks) {
+            return size;
+        }
+        int[] blockCounts = counts[block];
+        int i = 0;
+        while (blockCounts[i] <= remaining) {
+            remaining -= blockCounts[i++];
+        }
+        return row + i;
+    }
+
+    /**
+     * Counts the rows the buffer has taken in from the file since, at the
+     * end, as a screen row each.
+     */
+    private void sync(int rows) {
+        if (rows > size) {
+            insert(size, rows - size);
+        }
+    }
+
+    /**
+     * Inserts {@code count} unmeasured rows before {@code row}, splitting the
+     * block they go into should it grow past twice the block size.
+     */
+    private void insert(int row, int count) {
+        if (count <= 0) {
+            return;
+        }
+        if (blocks == 0) {
+            insertBlocks(0, 1);
+            counts[0] = new int[0];
+            measuredAt[0] = new int[0];
+            sizes[0] = 0;
+            screenRows[0] = 0;
+        }
+        int block = row < size ? blockOf(row) : blocks - 1;
+        int at = row < size ? within : sizes[block];
+        int blockSize = sizes[block];
+        size += count;
+        if (blockSize + count <= 2 * BLOCK_ROWS) {
+            if (blockSize + count > counts[block].length) {
+                int capacity = Math.min(2 * BLOCK_ROWS, Math.max(blockSize + count, blockSize + (blockSize >> 1)));
+                counts[block] = Arrays.copyOf(counts[block], capacity);
+                measuredAt[block] = Arrays.copyOf(measuredAt[block], capacity);
+            }
+            System.arraycopy(counts[block], at, counts[block], at + count, blockSize - at);
+            System.arraycopy(measuredAt[block], at, measuredAt[block], at + count, blockSize - at);
+            Arrays.fill(counts[block], at, at + count, 1);
+            Arrays.fill(measuredAt[block], at, at + count, 0);
+            sizes[block] += count;
+            screenRows[block] += count;
+            add(rowTree, block, count);
+            add(screenTree, block, count);
+            return;
+        }
+        // the rows before, the new rows and the rows after, cut into blocks
+        int[] oldCounts = counts[block];
+        int[] oldMeasuredAt = measuredAt[block];
+        int total = blockSize + count;
+        int pieces = (total + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        insertBlocks(block + 1, pieces - 1);
+        for (int piece = 0; piece < pieces; piece++) {
+            int from = piece * BLOCK_ROWS;
+            int to = Math.min(total, from + BLOCK_ROWS);
+            int[] pieceCounts = new int[to - from];
+            int[] pieceMeasuredAt = new int[to - from];
+            int sum = 0;
+            for (int i = from; i < to; i++) {
+                if (i < at || i >= at + count) {
+                    int old = i < at ? i : i - count;
+                    pieceCounts[i - from] = oldCounts[old];
+                    pieceMeasuredAt[i - from] = oldMeasuredAt[old];
+                } else {
+                    pieceCounts[i - from] = 1;
+                }
+                sum += pieceCounts[i - from];
+            }
+            counts[block + piece] = pieceCounts;
+            measuredAt[block + piece] = pieceMeasuredAt;
+            sizes[block + piece] = to - from;
+            screenRows[block + piece] = sum;
+        }
+    }
+
+    /**
+     * Removes rows {@code [row, row + count)}, dropping the blocks they empty
+     * and merging what is left of the blocks at either end if it is small.
+     */
+    private void remove(int row, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int first = blockOf(row);
+        int from = within;
+        int last = row + count < size ? blockOf(row + count) : blocks;
+        int to = last < blocks ? within : 0;
+        size -= count;
+        if (first == last) {
+            int[] blockCounts = counts[first];
+            int removed = 0;
+            for (int i = from; i < to; i++) {
+                removed += blockCounts[i];
+            }
+            System.arraycopy(blockCounts, to, blockCounts, from, sizes[first] - to);
+            System.arraycopy(measuredAt[first], to, measuredAt[first], from, sizes[first] - to);
+            sizes[first] -= count;
+            screenRows[first] -= removed;
+            add(rowTree, first, -count);
+            add(screenTree, first, -removed);
+        } else {
+            // keep the head of the first block and the tail of the last
+            sizes[first] = from;
+            screenRows[first] = sum(counts[first], 0, from);
+            if (last < blocks) {
+                int rest = sizes[last] - to;
+                System.arraycopy(counts[last], to, counts[last], 0, rest);
+                System.arraycopy(measuredAt[last], to, measuredAt[last], 0, rest);
+                sizes[last] = rest;
+                screenRows[last] = sum(counts[last], 0, rest);
+            }
+            int keep = from > 0 ? first + 1 : first;
+            removeBlocks(keep, last - keep);
+            stale = true;
+        }
+        if (blocks > 0) {
+            int block = Math.min(first, blocks - 1);
+            merge(block);
+            if (block > 0) {
+                merge(block - 1);
+            }
+        }
+    }
+
+    /**
+     * Merges block {@code block} with the next one if together they are no
+     * bigger than a block.
+     */
+    private void merge(int block) {
+        if (block + 1 >= blocks || sizes[block] + sizes[block + 1] > BLOCK_ROWS) {
+            return;
+        }
+        int length = sizes[block];
+        int next = sizes[block + 1];
+        counts[block] = Arrays.copyOf(counts[block], length + next);
+        measuredAt[block] = Arrays.copyOf(measuredAt[block], length + next);
+        System.arraycopy(counts[block + 1], 0, counts[block], length, next);
+        System.arraycopy(measuredAt[block + 1], 0, measuredAt[block], length, next);
+        sizes[block] += next;
+        screenRows[block] += screenRows[block + 1];
+        removeBlocks(block + 1, 1);
+    }
+
+    private void insertBlocks(int at, int count) {
+        if (blocks + count > sizes.length) {
+            int capacity = Math.max(blocks + count, sizes.length + (sizes.length >> 1));
+            counts = Arrays.copyOf(counts, capacity);
+            measuredAt = Arrays.copyOf(measuredAt, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            screenRows = Arrays.copyOf(screenRows, capacity);
+        }
+        System.arraycopy(counts, at, counts, at + count, blocks - at);
+        System.arraycopy(measuredAt, at, measuredAt, at + count, blocks - at);
+        System.arraycopy(sizes, at, sizes, at + count, blocks - at);
+        System.arraycopy(screenRows, at, screenRows, at + count, blocks - at);
+        blocks += count;
+        stale = true;
+    }
+
+    private void removeBlocks(int at, int count) {
+        if (count <= 0) {
+            return;
+        }
+        System.arraycopy(counts, at + count, counts, at, blocks - at - count);
+        System.arraycopy(measuredAt, at + count, measuredAt, at, blocks - at - count);
+        System.arraycopy(sizes, at + count, sizes, at, blocks - at - count);
+        System.arraycopy(screenRows, at + count, screenRows, at, blocks - at - count);
+        blocks -= count;
+        Arrays.fill(counts, blocks, blocks + count, null);
+        Arrays.fill(measuredAt, blocks, blocks + count, null);
+        stale = true;
+    }
+
+    /**
+     * Returns the block {@code row} is in, leaving where in it in
+     * {@code within}.
+     */
+    private int blockOf(int row) {
+        sumUp();
+        int block = 0;
+        int remaining = row;
+        for (int step = Integer.highestOneBit(Math.max(1, blocks)); step > 0; step >>= 1) {
+            if (block + step <= blocks && rowTree[block + step] <= remaining) {
+                block += step;
+                remaining -= rowTree[block];
+            }
+        }
+        within = remaining;
+        return block;
+    }
+
+    /**
+     * Adds {@code delta} to block {@code block} in {@code tree}, unless the
+     * trees are summed up afresh anyway.
+     */
+    private void add(int[] tree, int block, int delta) {
+        if (stale) {
+            return;
+        }
+        for (int i = block + 1; i <= blocks; i += Integer.lowestOneBit(i)) {
+            tree[i] += delta;
+        }
+    }
+
+    private int sum(int[] tree, int blocks) {
+        sumUp();
+        int sum = 0;
+        for (int i = blocks; i > 0; i -= Integer.lowestOneBit(i)) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    private static int sum(int[] counts, int from, int to) {
+        int sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += counts[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Sums the trees up again after blocks were split, merged or dropped; a
+     * run of edits, e.g. a paste, does so once.
+     */
+    private void sumUp() {
+        if (!stale) {
+            return;
+        }
+        if (rowTree == null || rowTree.length < blocks + 1) {
+            rowTree = new int[sizes.length + 1];
+            screenTree = new int[sizes.length + 1];
+        }
+        for (int i = 1; i <= blocks; i++) {
+            rowTree[i] = sizes[i - 1];
+            screenTree[i] = screenRows[i - 1];
+        }
+        for (int i = 1; i <= blocks; i++) {
+            int parent = i + Integer.lowestOneBit(i);
+            if (parent <= blocks) {
+                rowTree[parent] += rowTree[i];
+                screenTree[parent] += screenTree[i];
+            }
+        }
+        stale = false;
+    }
+}
@@ -0,0 +1,93 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void aGlobEditsEveryFileItMatches() throws IOException {
+        Path one = file("one.txt", "foo = 1\n");
+        Path two = file("two.txt", "x\nfoo = 2\n");
+        Path other = file("other.log", "foo\n");
+        assertEquals(0, batch("replace /foo/bar/\nsave\n", folder.getRoot() + "/*.txt"));
+        assertEquals("bar = 1\n", Files.readString(one));
+        assertEquals("x\nbar = 2\n", Files.readString(two));
+        assertEquals("foo\n", Files.readString(other));
+    }
+
+    @Test
+    public void editsGoInAtTheCursor() throws IOException {
+        Path file = file("file.txt", "a\nb\nc\n");
+        assertEquals(0, batch("goto 2\ninsert >\\t\nfind c\ninsert C\nsave\n", file.toString()));
+        assertEquals("a\n>\tb\nCc\n", Files.readString(file));
+    }
+
+    @Test
+    public void deletingAtTheStartJoinsLines() throws IOException {
+        Path file = file("file.txt", "a\nb\n");
+        assertEquals(0, batch("goto 2\ndelete 1\nnewline\nsave\n", file.toString()));
+        assertEquals("a\nb\n", Files.readString(file));
+        assertEquals(0, batch("goto 2\ndelete\nsave\n", file.toString()));
+        assertEquals("ab\n", Files.readString(file));
+    }
+
+    @Test
+    public void aFindWithoutAMatchLeavesTheFileAlone() throws IOException {
+        Path file = file("file.txt", "text\n");
+        assertEquals(0, batch("insert x\nfind missing\nsave\n", file.toString()));
+        assertEquals("text\n", Files.readString(file));
+    }
+
+    @Test
+    public void compressedFilesAreSavedCompressed() throws IOException {
+        Path file = folder.newFile("file.txt.gz").toPath();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write("old\n".getBytes(UTF_8));
+        }
+        assertEquals(0, batch("replace /old/new/\nsave\n", file.toString()));
+        assertTrue(Gunzip.isCompressed(file));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            assertEquals("new\n", new String(in.readAllBytes(), UTF_8));
+        }
+    }
+
+    @Test
+    public void aScriptWithAnUnknownCommandIsRefused() throws IOException {
+        Path file = file("file.txt", "text\n");
+        assertEquals(2, batch("insert x\nfrobnicate\nsave\n", file.toString()));
+        assertEquals("text\n", Files.readString(file));
+    }
+
+    @Test
+    public void aFileThatCannotBeReadFails() throws IOException {
+        assertEquals(1, batch("save\n", folder.getRoot().toPath().resolve("missing.txt").toString()));
+    }
+
+    private int batch(String script, String files) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.writeString(path, script);
+        return Batch.run(new String[] { path.toString(), files });
+    }
+
+    private Path file(String name, String text) throws IOException {
+        Path file = folder.newFile(name).toPath();
+        Files.writeString(file, text);
+        return file;
+    }
+}
@@ -0,0 +1,84 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class EncodingTest {
+    @After
+    public void clearEncoding() {
+        System.clearProperty("editor.encoding");
+    }
+
+    @Test
+    public void asciiIsUtf8() {
+        assertEquals(UTF_8, detect("plain text\n".getBytes(ISO_8859_1)));
+    }
+
+    @Test
+    public void validUtf8IsUtf8() {
+        assertEquals(UTF_8, detect("café, 日本語, 🎉\n".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void latin1LettersAreLatin1() {
+        assertEquals(ISO_8859_1, detect("café\n".getBytes(ISO_8859_1)));
+    }
+
+    @Test
+    public void smartQuotesAreWindows1252() {
+        assertEquals(Encoding.WINDOWS_1252, detect("“quoted”\n".getBytes(Encoding.WINDOWS_1252)));
+    }
+
+    @Test
+    public void bytesWindows1252LeavesUndefinedAreLatin1() {
+        assertEquals(ISO_8859_1, detect(new byte[] { (byte) 0x93, 'a', (byte) 0x81, '\n' }));
+    }
+
+    @Test
+    public void samplesStartingInsideASequenceAreUtf8() {
+        // the middle sample of a big file starts on the second byte of an é
+        byte[] bytes = new byte[1 + 2 * 150_000];
+        bytes[0] = 'a';
+        for (int i = 1; i < bytes.length; i += 2) {
+            bytes[i] = (byte) 0xC3;
+            bytes[i + 1] = (byte) 0xA9;
+        }
+        assertEquals(UTF_8, detect(bytes));
+    }
+
+    @Test
+    public void configuredCharsetWins() {
+        System.setProperty("editor.encoding", "windows-1251");
+        assertEquals(Charset.forName("windows-1251"), detect("plain text\n".getBytes(ISO_8859_1)));
+    }
+
+    @Test
+    public void nothingConfigured() {
+        assertNull(Encoding.configured());
+    }
+
+    @Test
+    public void multiByteCharsetsAreRefused() {
+        for (String name : new String[] { "UTF-16", "Shift_JIS", "IBM037", "no-such-charset" }) {
+            System.setProperty("editor.encoding", name);
+            try {
+                Encoding.configured();
+                fail(name);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static Charset detect(byte[] bytes) {
+        return Encoding.detect(new ByteArraySource(bytes));
+    }
+}
@@ -0,0 +1,118 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FingerprintTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void aFileMatchesUntilItChanges() throws IOException {
+        Path file = file("text\n");
+        Fingerprint fingerprint = Fingerprint.of(file, null);
+        assertTrue(fingerprint.matches(file));
+        Files.writeString(file, "other text\n");
+        assertFalse(fingerprint.matches(file));
+        Files.delete(file);
+        assertFalse(fingerprint.matches(file));
+    }
+
+    @Test
+    public void aChangeOfTheSameLengthReplacesOnlyItsChunk() throws IOException {
+        String text = lines(3 * Fingerprint.CHUNK);
+        Path file = file(text);
+        PieceTable content = new PieceTable(text.getBytes(UTF_8));
+        Fingerprint fingerprint = Fingerprint.of(file, content.snapshot());
+
+        char[] changed = text.toCharArray();
+        changed[Fingerprint.CHUNK + 10] = '#';
+        Files.writeString(file, new String(changed));
+        List<TextBuffer.Replacement> changes = merge(fingerprint, file, content, true);
+        assertEquals(1, changes.size());
+        assertEquals(Fingerprint.CHUNK, changes.get(0).from());
+        assertEquals(new String(changed), text(content));
+    }
+
+    @Test
+    public void anInsertionReadsOnlyWhatDiffers() throws IOException {
+        String text = lines(3 * Fingerprint.CHUNK);
+        Path file = file(text);
+        PieceTable content = new PieceTable(text.getBytes(UTF_8));
+        Fingerprint fingerprint = Fingerprint.of(file, content.snapshot());
+
+        int at = 2 * Fingerprint.CHUNK + 5;
+        String inserted = text.substring(0, at) + "inserted" + text.substring(at);
+        Files.writeString(file, inserted);
+        List<TextBuffer.Replacement> changes = merge(fingerprint, file, content, true);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).bytes().length < 100);
+        assertEquals(inserted, text(content));
+    }
+
+    @Test
+    public void aBufferEditedSinceIsComparedByteForByte() throws IOException {
+        Path file = file("one\ntwo\nthree\n");
+        PieceTable content = new PieceTable(Files.readAllBytes(file));
+        Fingerprint fingerprint = Fingerprint.of(file, content.snapshot());
+        content.insert(1, 0, "2 ");
+
+        Files.writeString(file, "one\ntwo\nthree\nfour\n");
+        merge(fingerprint, file, content, false);
+        assertEquals("one\ntwo\nthree\nfour\n", text(content));
+    }
+
+    @Test
+    public void theLineFeedTheBufferAddsIsNoChange() throws IOException {
+        Path file = file("one\ntwo");
+        PieceTable content = new PieceTable(Files.readAllBytes(file));
+        Fingerprint fingerprint = Fingerprint.of(file, content.snapshot());
+        Files.writeString(file, "one\ntwo");
+        assertTrue(merge(fingerprint, file, content, true).isEmpty());
+
+        Files.writeString(file, "");
+        merge(fingerprint, file, content, true);
+        assertEquals("", text(content));
+    }
+
+    private static List<TextBuffer.Replacement> merge(Fingerprint fingerprint, Path file, TextBuffer content,
+            boolean unchanged) throws IOException {
+        List<TextBuffer.Replacement> changes = fingerprint.changes(file, content.snapshot(), unchanged);
+        if (!changes.isEmpty()) {
+            content.replace(changes);
+        }
+        return changes;
+    }
+
+    private static String lines(int length) {
+        StringBuilder text = new StringBuilder(length + 32);
+        for (int i = 0; text.length() < length; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String text(TextBuffer content) {
+        TextSnapshot snapshot = content.snapshot();
+        byte[] bytes = new byte[(int) snapshot.length()];
+        snapshot.copy(0, bytes, 0, bytes.length);
+        return new String(bytes, UTF_8);
+    }
+
+    private Path file(String text) throws IOException {
+        Path file = folder.newFile("file.txt").toPath();
+        Files.writeString(file, text);
+        return file;
+    }
+}
@@ -0,0 +1,93 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FollowTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private Follow follow;
+
+    @After
+    public void stop() {
+        if (follow != null) {
+            follow.stop();
+        }
+    }
+
+    @Test
+    public void onlyWhatIsAppendedIsHandedOver() throws Exception {
+        Path file = file("old\n");
+        follow = Follow.start(file, Files.size(file), 10, this::lines, done -> stopped.countDown());
+        append(file, "one\ntwo\n");
+        assertEquals("one\ntwo\n", next());
+    }
+
+    @Test
+    public void aLineIsHeldBackUntilItEnds() throws Exception {
+        Path file = file("");
+        follow = Follow.start(file, 0, 10, this::lines, done -> stopped.countDown());
+        append(file, "one\ntw");
+        assertEquals("one\n", next());
+        append(file, "o\n");
+        assertEquals("two\n", next());
+    }
+
+    @Test
+    public void aTruncatedFileStopsFollowing() throws Exception {
+        Path file = file("a long line\n");
+        follow = Follow.start(file, Files.size(file), 10, this::lines, done -> stopped.countDown());
+        Files.writeString(file, "x\n");
+        assertTrue(stopped.await(5, SECONDS));
+        assertTrue(follow.truncated());
+        assertNull(follow.failure());
+    }
+
+    @Test
+    public void stoppingDoesNotReportAStop() throws Exception {
+        Path file = file("");
+        follow = Follow.start(file, 0, 10, this::lines, done -> stopped.countDown());
+        follow.stop();
+        assertFalse(stopped.await(200, MILLISECONDS));
+        assertFalse(follow.truncated());
+    }
+
+    private void lines(byte[] bytes) {
+        lines.add(new String(bytes, UTF_8));
+    }
+
+    private String next() throws InterruptedException {
+        return lines.poll(5, SECONDS);
+    }
+
+    private Path file(String text) throws IOException {
+        Path file = folder.newFile("file.log").toPath();
+        Files.writeString(file, text);
+        return file;
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.writeString(file, text, StandardOpenOption.APPEND);
+    }
+}
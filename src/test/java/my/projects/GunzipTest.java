@@ -0,0 +1,88 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GunzipTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StringBuilder lines = new StringBuilder();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    @Test
+    public void compressedFilesAreToldByTheirMagicNumber() throws IOException {
+        assertTrue(Gunzip.isCompressed(file(gzip("text\n"))));
+        assertFalse(Gunzip.isCompressed(file("text\n".getBytes(UTF_8))));
+    }
+
+    @Test
+    public void theLastLineGetsALineFeed() throws Exception {
+        Gunzip gunzip = gunzip(file(gzip("one\ntwo")));
+        assertNull(gunzip.failure());
+        assertEquals("one\ntwo\n", lines.toString());
+    }
+
+    @Test
+    public void membersAreReadAsOneStream() throws Exception {
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip("one\ntw"));
+        members.write(gzip("o\nthree\n"));
+        gunzip(file(members.toByteArray()));
+        assertEquals("one\ntwo\nthree\n", lines.toString());
+    }
+
+    @Test
+    public void aSampleIsTheStartDecompressed() throws IOException {
+        Path file = file(gzip("café\nmore\n"));
+        assertEquals("café", new String(Gunzip.sample(file, 5), UTF_8));
+    }
+
+    @Test
+    public void aCorruptFileFails() throws Exception {
+        byte[] corrupt = gzip("text\n");
+        corrupt[corrupt.length - 5] ^= 0xff;
+        Gunzip gunzip = gunzip(file(corrupt));
+        assertNotNull(gunzip.failure());
+    }
+
+    private Gunzip gunzip(Path file) throws InterruptedException {
+        Gunzip gunzip = Gunzip.start(file, bytes -> {
+            synchronized (lines) {
+                lines.append(new String(bytes, UTF_8));
+            }
+        }, stopped -> done.countDown());
+        assertTrue(done.await(5, SECONDS));
+        return gunzip;
+    }
+
+    private Path file(byte[] bytes) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, bytes);
+        return file;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(UTF_8));
+        }
+        return out.toByteArray();
+    }
+}
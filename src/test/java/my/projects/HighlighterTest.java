@@ -0,0 +1,98 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HighlighterTest {
+    private static final String DEFAULT = "\033[39m";
+    private static final String KEYWORD = "\033[33m";
+    private static final String STRING = "\033[32m";
+    private static final String NUMBER = "\033[35m";
+    private static final String COMMENT = "\033[90m";
+    private static final String KEY = "\033[34m";
+    private static final String ERROR = "\033[31m";
+
+    private final List<Integer> restyled = new ArrayList<>();
+
+    @After
+    public void clearSyntax() {
+        System.clearProperty("editor.syntax");
+    }
+
+    @Test
+    public void javaKeywordsStringsAndNumbers() {
+        Highlighter highlighter = highlighter(Syntax.JAVA, "return \"a\" + 42;\n");
+        assertEquals(KEYWORD + "return" + DEFAULT + " " + STRING + "\"a\"" + DEFAULT + " + " + NUMBER + "42"
+                + DEFAULT + ";", line(highlighter, 0));
+    }
+
+    @Test
+    public void blockCommentsCarryOverToTheNextRow() {
+        Highlighter highlighter = highlighter(Syntax.JAVA, "/* a\nb */ int\n");
+        assertEquals(COMMENT + "b */" + DEFAULT + " " + KEYWORD + "int" + DEFAULT, line(highlighter, 1));
+    }
+
+    @Test
+    public void onlyTheColumnsAskedForAreWritten() {
+        Highlighter highlighter = highlighter(Syntax.JAVA, "int value;\n");
+        OutputBuffer out = new OutputBuffer(64);
+        highlighter.writeLine(0, 1, 6, out);
+        assertEquals(KEYWORD + "nt" + DEFAULT + " va", out.decode());
+    }
+
+    @Test
+    public void openingACommentRestylesTheRowsBelow() {
+        PieceTable content = new PieceTable("int a;\nint b;\nint c;\n".getBytes(UTF_8));
+        Highlighter highlighter = new Highlighter(content, new Layout(content), Syntax.JAVA, restyled::add);
+        highlighter.prepare(0, 3);
+        content.insert(0, 0, "/*");
+        highlighter.edited(0, 1, 1);
+        highlighter.prepare(0, 3);
+        assertEquals(List.of(1, 2, 3), restyled);
+        assertEquals(COMMENT + "int c;" + DEFAULT, line(highlighter, 2));
+    }
+
+    @Test
+    public void jsonKeysAreNotStrings() {
+        Highlighter highlighter = highlighter(Syntax.JSON, "{\"k\": \"v\"}\n");
+        assertEquals("{" + KEY + "\"k\"" + DEFAULT + ": " + STRING + "\"v\"" + DEFAULT + "}", line(highlighter, 0));
+    }
+
+    @Test
+    public void logLevelsAreColored() {
+        Highlighter highlighter = highlighter(Syntax.LOG, "boom ERROR here\n");
+        assertEquals("boom " + ERROR + "ERROR" + DEFAULT + " here", line(highlighter, 0));
+    }
+
+    @Test
+    public void syntaxFollowsTheExtensionUnlessConfigured() {
+        assertEquals(Syntax.JAVA, Syntax.forFile(Path.of("A.java")));
+        assertEquals(Syntax.YAML, Syntax.forFile(Path.of("config.YML")));
+        assertNull(Syntax.forFile(Path.of("notes.txt")));
+        System.setProperty("editor.syntax", "log");
+        assertEquals(Syntax.LOG, Syntax.forFile(Path.of("A.java")));
+        System.setProperty("editor.syntax", "none");
+        assertNull(Syntax.forFile(Path.of("A.java")));
+    }
+
+    private Highlighter highlighter(Syntax syntax, String text) {
+        PieceTable content = new PieceTable(text.getBytes(UTF_8));
+        Highlighter highlighter = new Highlighter(content, new Layout(content), syntax, restyled::add);
+        highlighter.prepare(0, content.lineCount());
+        return highlighter;
+    }
+
+    private static String line(Highlighter highlighter, int row) {
+        OutputBuffer out = new OutputBuffer(64);
+        highlighter.writeLine(row, 0, Integer.MAX_VALUE, out);
+        return out.decode();
+    }
+}
@@ -0,0 +1,83 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changesAreReadBackInOrder() throws IOException {
+        Path file = file("hello\n");
+        Journal journal = Journal.start(file, 0, failed -> {
+        });
+        journal.changed(0, 0, "ab".getBytes(UTF_8));
+        journal.changed(1, 3, new byte[0]);
+        journal.close();
+
+        Journal.Recovered recovered = Journal.read(file);
+        assertTrue(recovered.current());
+        assertEquals(2, recovered.changes().size());
+        TextBuffer.Replacement first = recovered.changes().get(0);
+        assertEquals(0, first.from());
+        assertEquals(0, first.to());
+        assertArrayEquals("ab".getBytes(UTF_8), first.bytes());
+        assertEquals(4, recovered.changes().get(1).to());
+        assertNull(journal.failure());
+    }
+
+    @Test
+    public void aSwapFileForAnotherVersionIsNotCurrent() throws IOException {
+        Path file = file("hello\n");
+        Journal journal = Journal.start(file, 0, failed -> {
+        });
+        journal.changed(0, 0, "x".getBytes(UTF_8));
+        journal.close();
+        Files.writeString(file, "hello again\n");
+
+        Journal.Recovered recovered = Journal.read(file);
+        assertFalse(recovered.current());
+        assertTrue(recovered.changes().isEmpty());
+    }
+
+    @Test
+    public void aSwapFileThatCannotBeWrittenFailsOnce() throws Exception {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full));
+        Path file = file("hello\n");
+        Files.createSymbolicLink(Journal.pathFor(file), full);
+        CountDownLatch failed = new CountDownLatch(1);
+        Journal journal = Journal.start(file, 0, stopped -> failed.countDown());
+        journal.changed(0, 0, "x".getBytes(UTF_8));
+        assertTrue(failed.await(5, SECONDS));
+        assertNotNull(journal.failure());
+
+        // later changes are dropped rather than buffered for a writer that is gone
+        journal.changed(1, 0, "y".getBytes(UTF_8));
+        journal.close();
+        assertEquals(0, failed.getCount());
+    }
+
+    private Path file(String text) throws IOException {
+        Path file = folder.newFile("file.txt").toPath();
+        Files.writeString(file, text);
+        return file;
+    }
+}
@@ -0,0 +1,76 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LayoutTest {
+    @Test
+    public void plainTextIsAColumnAChar() {
+        Layout layout = layout("hello\n");
+        assertEquals(3, layout.screenColumn(0, 3));
+        assertEquals(3, layout.column(0, 3));
+        assertEquals(5, layout.column(0, 40));
+    }
+
+    @Test
+    public void tabsRunToTheNextStop() {
+        Layout layout = layout("a\tb\n");
+        assertEquals(1, layout.screenColumn(0, 1));
+        assertEquals(8, layout.screenColumn(0, 2));
+        assertEquals(1, layout.column(0, 5));
+        assertEquals(5, Layout.width('\t', 3));
+    }
+
+    @Test
+    public void wideCharactersTakeTwoColumns() {
+        Layout layout = layout("日本x\n");
+        assertEquals(2, layout.screenColumn(0, 1));
+        assertEquals(4, layout.screenColumn(0, 2));
+        assertEquals(1, layout.column(0, 3));
+    }
+
+    @Test
+    public void theCursorSkipsSurrogatesAndCombiningMarks() {
+        Layout layout = layout("🎉éx\n");
+        assertEquals(2, layout.next(0, 0));
+        assertEquals(4, layout.next(0, 2));
+        assertEquals(2, layout.previous(0, 4));
+        assertEquals(0, layout.previous(0, 2));
+        assertEquals(3, layout.screenColumn(0, 4));
+    }
+
+    @Test
+    public void aWideCharacterCutByTheEdgeIsShownAsSpace() {
+        Layout layout = layout("日本\n");
+        assertEquals(" 本", line(layout, 1, 4));
+        assertEquals("日 ", line(layout, 0, 3));
+    }
+
+    @Test
+    public void controlCharactersAreShownAsQuestionMarks() {
+        Layout layout = layout("a\u0001b\tc\n");
+        assertEquals("a?b     c", line(layout, 0, 40));
+    }
+
+    @Test
+    public void editsAreLaidOutAgain() {
+        PieceTable content = new PieceTable("abc\n".getBytes(UTF_8));
+        Layout layout = new Layout(content);
+        assertEquals(2, layout.screenColumn(0, 2));
+        content.insert(0, 0, "\t");
+        layout.edited(0, 1, 1);
+        assertEquals(9, layout.screenColumn(0, 2));
+    }
+
+    private static Layout layout(String text) {
+        return new Layout(new PieceTable(text.getBytes(UTF_8)));
+    }
+
+    private static String line(Layout layout, int from, int to) {
+        OutputBuffer out = new OutputBuffer(64);
+        layout.writeLine(0, from, to, out, null);
+        return out.decode();
+    }
+}
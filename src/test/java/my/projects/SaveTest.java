@@ -0,0 +1,116 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SaveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesTheEditedText() throws IOException {
+        Path file = file("one\ntwo\n");
+        PieceTable content = new PieceTable(Files.readAllBytes(file));
+        content.insert(1, 0, "and ");
+        assertNull(save(content, file, false, false).failure());
+        assertEquals("one\nand two\n", Files.readString(file));
+    }
+
+    @Test
+    public void createsAFileThatDoesNotExistYet() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("new.txt");
+        PieceTable content = new PieceTable();
+        content.insertLine(0, "fresh");
+        assertNull(save(content, file, false, false).failure());
+        assertTrue(Files.readString(file).startsWith("fresh"));
+    }
+
+    @Test
+    public void keepsThePermissions() throws IOException {
+        Path file = file("text\n");
+        assumeTrue(Files.getFileStore(file).supportsFileAttributeView("posix"));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r-----"));
+        save(new PieceTable("changed\n".getBytes(UTF_8)), file, false, false);
+        assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    @Test
+    public void writesThroughASymbolicLink() throws IOException {
+        Path file = file("text\n");
+        Path link = folder.getRoot().toPath().resolve("link.txt");
+        Files.createSymbolicLink(link, file);
+        save(new PieceTable("changed\n".getBytes(UTF_8)), link, false, false);
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals("changed\n", Files.readString(file));
+    }
+
+    @Test
+    public void keepsHardLinks() throws IOException {
+        Path file = file("text\n");
+        Path link = folder.getRoot().toPath().resolve("link.txt");
+        Files.createLink(link, file);
+        save(new PieceTable("changed\n".getBytes(UTF_8)), file, false, false);
+        assertEquals("changed\n", Files.readString(link));
+    }
+
+    @Test
+    public void refusesToOverwriteAHardLinkedFileItMaps() throws IOException {
+        Path file = file("text\n");
+        Files.createLink(folder.getRoot().toPath().resolve("link.txt"), file);
+        Save save = save(new PieceTable("changed\n".getBytes(UTF_8)), file, false, true);
+        assertNotNull(save.failure());
+        assertEquals("text\n", Files.readString(file));
+    }
+
+    @Test
+    public void compressesBlockByBlock() throws IOException {
+        Path file = file("");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 3 * 1024 * 1024; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        assertNull(save(new PieceTable(text.toString().getBytes(UTF_8)), file, true, false).failure());
+        assertTrue(Gunzip.isCompressed(file));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            assertEquals(text.toString(), new String(in.readAllBytes(), UTF_8));
+        }
+    }
+
+    @Test
+    public void anEmptyFileIsStillGzip() throws IOException {
+        Path file = file("text\n");
+        assertNull(save(new PieceTable(), file, true, false).failure());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            assertTrue(new String(in.readAllBytes(), UTF_8).isBlank());
+        }
+    }
+
+    private Path file(String text) throws IOException {
+        Path file = folder.newFile("file.txt").toPath();
+        Files.writeString(file, text);
+        return file;
+    }
+
+    private static Save save(TextBuffer content, Path file, boolean compress, boolean mapped) {
+        Save save = Save.start(content.snapshot(), file, compress, mapped, Long.MAX_VALUE, () -> {
+        }, done -> {
+        });
+        save.await();
+        return save;
+    }
+}
@@ -0,0 +1,148 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+public class SearchEngineTest {
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+    private final SearchEngine engine = new SearchEngine(pool);
+
+    @AfterClass
+    public static void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void findsEveryOccurrenceInOrder() {
+        SearchEngine.Search search = find(new PieceTable("abcab\nxab\n".getBytes(UTF_8)), "ab");
+        assertEquals(3, search.count());
+        assertEquals(0, search.next(-1));
+        assertEquals(3, search.next(0));
+        assertEquals(7, search.next(3));
+    }
+
+    @Test
+    public void nextAndPreviousWrapAround() {
+        SearchEngine.Search search = find(new PieceTable("ab ab ab\n".getBytes(UTF_8)), "ab");
+        assertEquals(0, search.next(6));
+        assertEquals(6, search.previous(0));
+        assertEquals(3, search.previous(6));
+    }
+
+    @Test
+    public void noMatchesGivesMinusOne() {
+        SearchEngine.Search search = find(new PieceTable("hello\n".getBytes(UTF_8)), "xyz");
+        assertEquals(0, search.count());
+        assertEquals(-1, search.next(0));
+        assertEquals(-1, search.previous(0));
+        assertFalse(search.isTruncated());
+    }
+
+    @Test
+    public void searchesTheEditedText() {
+        PieceTable content = new PieceTable("one\ntwo\n".getBytes(UTF_8));
+        content.insert(1, 0, "one ");
+        SearchEngine.Search search = find(content, "one");
+        assertEquals(2, search.count());
+        assertEquals(4, search.next(0));
+    }
+
+    @Test
+    public void findsMatchesAcrossChunks() {
+        // the text is scanned in 4 MB chunks, put matches on both sides of
+        // the first boundary and one straddling it
+        byte[] text = new byte[9 * 1024 * 1024];
+        Arrays.fill(text, (byte) 'x');
+        text[text.length - 1] = '\n';
+        int boundary = 4 * 1024 * 1024;
+        put(text, boundary - 10, "needle");
+        put(text, boundary - 3, "needle");
+        put(text, boundary + 10, "needle");
+        SearchEngine.Search search = find(new PieceTable(text), "needle");
+        assertEquals(3, search.count());
+        assertEquals(boundary - 3, search.next(boundary - 10));
+        assertTrue(search.isDone());
+    }
+
+    @Test
+    public void plainQueriesMatchMultiByteText() {
+        SearchEngine.Search search = find(new PieceTable("día, día\n".getBytes(UTF_8)), "í");
+        assertEquals(2, search.count());
+        assertEquals(1, search.next(-1));
+        assertEquals(7, search.next(1));
+    }
+
+    @Test
+    public void regexMatchesAtByteOffsets() {
+        SearchEngine.Search search = findRegex(new PieceTable("día 12\nx 345\n".getBytes(UTF_8)), "[0-9]+");
+        assertEquals(2, search.count());
+        assertEquals(5, search.next(-1));
+        assertEquals(10, search.next(5));
+    }
+
+    @Test
+    public void regexDoesNotSpanLines() {
+        PieceTable content = new PieceTable("ab\r\ncd\n".getBytes(UTF_8));
+        assertEquals(0, findRegex(content, "b\\s+c").count());
+        assertEquals(1, findRegex(content, "b$").count());
+    }
+
+    @Test
+    public void replaceAllRewritesEveryLineThatMatches() {
+        PieceTable content = new PieceTable("a1 b2\nnone\nc3\n".getBytes(UTF_8));
+        assertEquals(3, replaceAll(content, "([a-z])([0-9])", "$2$1"));
+        assertEquals("1a 2b", content.line(0));
+        assertEquals("none", content.line(1));
+        assertEquals("3c", content.line(2));
+    }
+
+    @Test
+    public void replaceAllKeepsLineBreaks() {
+        PieceTable content = new PieceTable("x\r\nx\r\n".getBytes(UTF_8));
+        assertEquals(2, replaceAll(content, "x", "yy"));
+        assertEquals(2, content.lineCount());
+        assertEquals("yy", content.line(1));
+        assertEquals(1, find(content, "yy\r\nyy").count());
+    }
+
+    @Test
+    public void replaceAllWithoutMatchesChangesNothing() {
+        PieceTable content = new PieceTable("abc\n".getBytes(UTF_8));
+        long version = content.version();
+        assertEquals(0, replaceAll(content, "z+", ""));
+        assertEquals("abc", content.line(0));
+        assertEquals(version, content.version());
+    }
+
+    private SearchEngine.Search find(TextBuffer content, String pattern) {
+        SearchEngine.Search search = engine.find(content.snapshot(), pattern, UTF_8);
+        search.await();
+        return search;
+    }
+
+    private SearchEngine.Search findRegex(TextBuffer content, String regex) {
+        SearchEngine.Search search = engine.findRegex(content.snapshot(), regex, UTF_8);
+        search.await();
+        return search;
+    }
+
+    private int replaceAll(TextBuffer content, String regex, String replacement) {
+        SearchEngine.Replace replace = engine.replaceAll(content.snapshot(), regex, replacement, UTF_8);
+        replace.await();
+        replace.apply(content);
+        return replace.count();
+    }
+
+    private static void put(byte[] text, int at, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        System.arraycopy(bytes, 0, text, at, bytes.length);
+    }
+}
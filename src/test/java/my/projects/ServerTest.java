@@ -0,0 +1,149 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ServerTest {
+    private static final String SAVE = "\u0013";
+    private static final String QUIT = "\u0011";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path socket;
+
+    @Before
+    public void posix() {
+        assumeTrue(folder.getRoot().toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+        socket = folder.getRoot().toPath().resolve("server").resolve("editor.sock");
+    }
+
+    @Test
+    public void aClientEditsFilesThroughTheServer() throws Exception {
+        start();
+        Path file = folder.newFile("file.txt").toPath();
+        Files.writeString(file, "hello\n");
+
+        ByteArrayOutputStream screen = new ByteArrayOutputStream();
+        Client.attach(new KeyTerminal("a", SAVE, QUIT), socket, file, screen);
+        assertEquals("ahello\n", Files.readString(file));
+        assertTrue(screen.toString(UTF_8).contains("hello"));
+
+        // one client after the other
+        Client.attach(new KeyTerminal("b", SAVE, QUIT), socket, file, new ByteArrayOutputStream());
+        assertEquals("bahello\n", Files.readString(file));
+    }
+
+    @Test
+    public void theSocketDirectoryIsCreatedPrivate() throws Exception {
+        start();
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socket.getParent())));
+    }
+
+    @Test
+    public void aSocketDirectoryOthersCanEnterIsRefused() throws IOException {
+        Files.createDirectory(socket.getParent(), PosixFilePermissions.asFileAttribute(
+                PosixFilePermissions.fromString("rwxr-xr-x")));
+        try {
+            Server.serve(socket);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("chmod 700"));
+        }
+        assertFalse(Files.exists(socket));
+    }
+
+    @Test
+    public void aSecondServerIsRefused() throws Exception {
+        start();
+        try {
+            Server.serve(socket);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("already listening"));
+        }
+    }
+
+    /**
+     * Serves on {@code socket} on a daemon thread, returning once the socket
+     * is bound.
+     */
+    private void start() throws InterruptedException {
+        Thread server = new Thread(() -> {
+            try {
+                Server.serve(socket);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "test-server");
+        server.setDaemon(true);
+        server.start();
+        for (int i = 0; i < 500 && !Files.exists(socket); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(Files.exists(socket));
+    }
+
+    /**
+     * A terminal the keys are typed on one at a time, then nothing more.
+     */
+    private static final class KeyTerminal implements Terminal {
+        private final LinkedBlockingQueue<byte[]> keys = new LinkedBlockingQueue<>();
+
+        KeyTerminal(String... keys) {
+            for (String key : keys) {
+                this.keys.add(key.getBytes(UTF_8));
+            }
+        }
+
+        @Override
+        public void enableRawMode() {
+        }
+
+        @Override
+        public void disableRawMode() {
+        }
+
+        @Override
+        public WindowSize getWindowSize() {
+            return new WindowSize(10, 40);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            byte[] key = keys.remove();
+            System.arraycopy(key, 0, buffer, offset, key.length);
+            return key.length;
+        }
+
+        @Override
+        public boolean waitForInput(long timeoutMillis) throws IOException {
+            if (!keys.isEmpty()) {
+                return true;
+            }
+            try {
+                Thread.sleep(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Drives the editor on a {@link VirtualTerminal}, a chunk of input per key
+ * the way a terminal delivers keystrokes, and checks what it shows and what
+ * it leaves in the file. The editor is static, so sessions run one after
+ * another.
+ */
+public class TextEditorTest {
+    private static final String UNDO = "\u001A";
+    private static final String REDO = "\u0019";
+    private static final String SAVE = "\u0013";
+    private static final String QUIT = "\u0011";
+    private static final String BACKSPACE = "\u007F";
+    private static final String LEFT = "\033[D";
+    private static final String DOWN = "\033[B";
+    private static final String END = "\033[F";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void typedCharactersGoInAtTheCursor() throws IOException {
+        Path file = file("hello\n");
+        ScreenModel screen = show(file, "a", "b", END, "!");
+        assertEquals("abhello!", screen.row(0).strip());
+        assertEquals(0, screen.cursorRow());
+        assertEquals(8, screen.cursorColumn());
+    }
+
+    @Test
+    public void enterSplitsTheLine() throws IOException {
+        Path file = file("hello\n");
+        ScreenModel screen = show(file, END, LEFT, LEFT, "\r");
+        assertEquals("hel", screen.row(0).strip());
+        assertEquals("lo", screen.row(1).strip());
+    }
+
+    @Test
+    public void backspaceAtTheStartJoinsLines() throws IOException {
+        Path file = file("one\ntwo\n");
+        ScreenModel screen = show(file, DOWN, BACKSPACE);
+        assertEquals("onetwo", screen.row(0).strip());
+        assertEquals(0, screen.cursorRow());
+        assertEquals(3, screen.cursorColumn());
+    }
+
+    @Test
+    public void pasteIsInsertedWhole() throws IOException {
+        Path file = file("x\n");
+        ScreenModel screen = show(file, "\033[200~one\rtwo\033[201~");
+        assertEquals("one", screen.row(0).strip());
+        assertEquals("twox", screen.row(1).strip());
+    }
+
+    @Test
+    public void movingPastTheBottomScrolls() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        Path file = file(text.toString());
+        String[] keys = new String[12];
+        Arrays.fill(keys, DOWN);
+        ScreenModel screen = show(file, keys);
+        // nine text rows above the status bar, the cursor on the last of them
+        assertEquals("line 4", screen.row(0).strip());
+        assertEquals("line 12", screen.row(8).strip());
+        assertEquals(8, screen.cursorRow());
+    }
+
+    @Test
+    public void typedCharactersAreUndoneTogether() throws IOException {
+        Path file = file("hello\n");
+        ScreenModel screen = show(file, "a", "b", "c", UNDO);
+        assertEquals("hello", screen.row(0).strip());
+    }
+
+    @Test
+    public void redoPutsBackWhatWasUndone() throws IOException {
+        Path file = file("hello\n");
+        ScreenModel screen = show(file, "a", "b", "c", UNDO, REDO);
+        assertEquals("abchello", screen.row(0).strip());
+    }
+
+    @Test
+    public void movingTheCursorStartsAnotherEdit() throws IOException {
+        Path file = file("hello\n");
+        ScreenModel screen = show(file, "a", "b", LEFT, "c", UNDO);
+        assertEquals("abhello", screen.row(0).strip());
+    }
+
+    @Test
+    public void undoingEverythingLeavesTheFileAsItWas() throws IOException {
+        Path file = file("one\ntwo\n");
+        ScreenModel screen = show(file, "x", DOWN, "y", "\r", UNDO, UNDO, UNDO, UNDO);
+        assertEquals("one", screen.row(0).strip());
+        assertEquals("two", screen.row(1).strip());
+    }
+
+    @Test
+    public void saveWritesTheBufferBack() throws IOException {
+        Path file = file("one\ntwo\n");
+        edit(file, DOWN, "x", "\r", "y", SAVE, QUIT);
+        assertEquals("one\nx\nytwo\n", Files.readString(file));
+    }
+
+    @Test
+    public void saveKeepsCarriageReturns() throws IOException {
+        Path file = file("a\r\nb\r\n");
+        edit(file, END, "\r", "c", SAVE, QUIT);
+        assertEquals("a\r\nc\r\nb\r\n", Files.readString(file));
+    }
+
+    @Test
+    public void saveKeepsTheCharsetOfTheFile() throws IOException {
+        Path file = folder.newFile("latin.txt").toPath();
+        Files.write(file, "café\n".getBytes(ISO_8859_1));
+        // pasted, as typed keys are taken a byte at a time
+        edit(file, END, "\033[200~èà\033[201~", SAVE, QUIT);
+        assertEquals("caféèà\n", new String(Files.readAllBytes(file), ISO_8859_1));
+    }
+
+    @Test
+    public void changesLeftInTheSwapFileAreRecovered() throws IOException {
+        Path file = file("hello\n");
+        // input ending before Ctrl-Q is a session that died
+        edit(file, "a", "b", "c");
+        assertTrue(Files.exists(Journal.pathFor(file)));
+        assertEquals("hello\n", Files.readString(file));
+
+        edit(file, "y", SAVE, QUIT);
+        assertEquals("abchello\n", Files.readString(file));
+        assertFalse(Files.exists(Journal.pathFor(file)));
+    }
+
+    @Test
+    public void declinedRecoveryLeavesTheFileAlone() throws IOException {
+        Path file = file("hello\n");
+        edit(file, "a", "b", "c");
+        assertTrue(Files.exists(Journal.pathFor(file)));
+
+        edit(file, "n", QUIT);
+        assertEquals("hello\n", Files.readString(file));
+        assertFalse(Files.exists(Journal.pathFor(file)));
+    }
+
+    private Path file(String text) throws IOException {
+        Path file = folder.newFile("file.txt").toPath();
+        Files.writeString(file, text);
+        return file;
+    }
+
+    /**
+     * Opens {@code file} the way {@link Replay} does, without a swap file,
+     * types {@code keys} and returns the screen once they are handled.
+     */
+    private static ScreenModel show(Path file, String... keys) throws IOException {
+        VirtualTerminal terminal = terminal(keys);
+        TextEditor.initEditor(terminal, terminal.output());
+        TextEditor.openFile(file);
+        TextEditor.run();
+        TextEditor.refreshScreen();
+        TextEditor.flush();
+        return terminal.screen();
+    }
+
+    /**
+     * Edits {@code file} the way {@link App} does, swap file and all, until
+     * Ctrl-Q or the end of {@code keys}.
+     */
+    private static void edit(Path file, String... keys) {
+        VirtualTerminal terminal = terminal(keys);
+        TextEditor.initEditor(terminal, terminal.output());
+        TextEditor.edit(file);
+    }
+
+    private static VirtualTerminal terminal(String... keys) {
+        VirtualTerminal terminal = new VirtualTerminal(new WindowSize(10, 40));
+        for (String key : keys) {
+            terminal.feed(key.getBytes(UTF_8));
+        }
+        terminal.endInput();
+        return terminal;
+    }
+}
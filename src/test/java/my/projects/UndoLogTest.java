@@ -0,0 +1,88 @@
+package my.projects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class UndoLogTest {
+    // an entry of two longs takes 40 bytes
+    private static final long ENTRY = 40;
+
+    @Test
+    public void undoAndRedoMoveWholeEdits() {
+        UndoLog log = new UndoLog(1024);
+        log.record(entry(1, 10));
+        log.record(entry(2, 20));
+        log.record(entry(2, 21));
+        long[][] undone = log.undo();
+        assertEquals(2, undone.length);
+        assertEquals(21, undone[0][1]);
+        assertEquals(1, log.undo().length);
+        assertEquals(0, log.undo().length);
+
+        long[][] redone = log.redo();
+        assertEquals(1, redone.length);
+        assertEquals(10, redone[0][1]);
+        assertEquals(2, log.redo().length);
+    }
+
+    @Test
+    public void recordingForgetsWhatWasUndone() {
+        UndoLog log = new UndoLog(1024);
+        log.record(entry(1, 10));
+        log.undo();
+        log.record(entry(2, 20));
+        assertEquals(0, log.redo().length);
+        assertEquals(20, log.undo()[0][1]);
+        assertEquals(0, log.undo().length);
+    }
+
+    @Test
+    public void oldestEditsAreDroppedFirst() {
+        UndoLog log = new UndoLog(3 * ENTRY);
+        for (int group = 1; group <= 4; group++) {
+            log.record(entry(group, group));
+        }
+        assertEquals(4, log.undo()[0][1]);
+        assertEquals(3, log.undo()[0][1]);
+        assertEquals(2, log.undo()[0][1]);
+        assertEquals(0, log.undo().length);
+    }
+
+    @Test
+    public void theEditBeingRecordedIsKeptWhole() {
+        UndoLog log = new UndoLog(3 * ENTRY + 4);
+        log.record(entry(1, 10));
+        log.record(entry(2, 20));
+        log.record(entry(2, 21));
+        log.record(entry(2, 22));
+        assertEquals(3, log.undo().length);
+        assertEquals(0, log.undo().length);
+    }
+
+    @Test
+    public void anEditTooLargeToKeepIsDroppedWithEverythingElse() {
+        UndoLog log = new UndoLog(3 * ENTRY);
+        log.record(entry(1, 10));
+        log.record(entry(2, 20));
+        log.record(entry(2, 21));
+        log.record(entry(2, 22));
+        log.record(entry(2, 23));
+        assertNull(log.last());
+        assertEquals(0, log.undo().length);
+
+        // the rest of that edit is not recorded either, the next one is
+        log.record(entry(2, 24));
+        assertEquals(0, log.undo().length);
+        log.record(entry(3, 30));
+        assertEquals(30, log.undo()[0][1]);
+    }
+
+    private static long[] entry(long group, long value) {
+        long[] entry = new long[2];
+        entry[UndoLog.GROUP] = group;
+        entry[1] = value;
+        return entry;
+    }
+}
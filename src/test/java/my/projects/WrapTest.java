@@ -0,0 +1,111 @@
+package my.projects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WrapTest {
+    private static final String LONG = "0123456789012345678901234";
+
+    @Test
+    public void rowsWiderThanTheScreenTakeSeveralScreenRows() {
+        Wrap wrap = wrap(LONG + "\n0123456789\nab\n", 10);
+        assertEquals(3, wrap.measure(0));
+        // the cursor past the end of a full row needs a row of its own
+        assertEquals(2, wrap.measure(1));
+        assertEquals(1, wrap.measure(2));
+    }
+
+    @Test
+    public void rowsCountAsOneUntilMeasured() {
+        Wrap wrap = wrap(LONG + "\n" + LONG + "\nab\n", 10);
+        assertEquals(2, wrap.screenRow(2));
+        assertTrue(wrap.measure(0, 1));
+        assertEquals(3, wrap.screenRow(1));
+        assertEquals(4, wrap.screenRow(2));
+        assertFalse(wrap.measure(0, 1));
+    }
+
+    @Test
+    public void screenRowsMapBackToTheirRow() {
+        Wrap wrap = wrap(LONG + "\nab\n" + LONG + "\n", 10);
+        wrap.measure(0, 10);
+        assertEquals(0, wrap.rowAt(2));
+        assertEquals(1, wrap.rowAt(3));
+        assertEquals(2, wrap.rowAt(4));
+        assertEquals(2, wrap.rowAt(6));
+        assertEquals(7, wrap.screenRow(3));
+    }
+
+    @Test
+    public void aResizeMeasuresRowsAgain() {
+        Wrap wrap = wrap(LONG + "\nab\n", 10);
+        wrap.measure(0, 10);
+        assertEquals(3, wrap.screenRow(1));
+        wrap.resize(30);
+        assertTrue(wrap.measure(0, 10));
+        assertEquals(1, wrap.screenRow(1));
+    }
+
+    @Test
+    public void editsMoveTheRowsBelow() {
+        PieceTable content = new PieceTable(("ab\n" + LONG + "\n").getBytes(UTF_8));
+        Layout layout = new Layout(content);
+        Wrap wrap = new Wrap(content, layout, 10);
+        wrap.measure(0, 10);
+        assertEquals(1, wrap.screenRow(1));
+
+        content.insertLine(0, LONG);
+        layout.edited(0, 0, 1);
+        wrap.edited(0, 0, 1);
+        wrap.measure(0, 10);
+        assertEquals(3, wrap.screenRow(1));
+        assertEquals(4, wrap.screenRow(2));
+
+        content.deleteLine(1);
+        layout.edited(1, 1, 0);
+        wrap.edited(1, 1, 0);
+        assertEquals(3, wrap.screenRow(1));
+        assertEquals(1, wrap.rowAt(4));
+    }
+
+    @Test
+    public void countsStayRightAcrossManyBlocks() {
+        int rows = 5000;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            text.append(LONG).append('\n');
+        }
+        PieceTable content = new PieceTable(text.toString().getBytes(UTF_8));
+        Layout layout = new Layout(content);
+        Wrap wrap = new Wrap(content, layout, 10);
+        wrap.measure(0, 3 * rows);
+        assertEquals(3 * 4000, wrap.screenRow(4000));
+        assertEquals(4000, wrap.rowAt(3 * 4000 + 2));
+
+        for (int i = 0; i < 1500; i++) {
+            content.deleteLine(100);
+        }
+        layout.edited(100, 1500, 0);
+        wrap.edited(100, 1500, 0);
+        assertEquals(3 * 2500, wrap.screenRow(2500));
+        assertEquals(2500, wrap.rowAt(3 * 2500));
+
+        for (int i = 0; i < 3000; i++) {
+            content.insertLine(200, "ab");
+        }
+        layout.edited(200, 0, 3000);
+        wrap.edited(200, 0, 3000);
+        wrap.measure(200, 3000);
+        assertEquals(3 * 200 + 3000, wrap.screenRow(3200));
+        assertEquals(3200, wrap.rowAt(3 * 200 + 3000));
+    }
+
+    private static Wrap wrap(String text, int width) {
+        PieceTable content = new PieceTable(text.getBytes(UTF_8));
+        return new Wrap(content, new Layout(content), width);
+    }
+}